@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.dump;
+
+import org.jvss.logical.VssDatabase;
+import org.jvss.logical.VssDatabaseFactory;
+import org.jvss.logical.VssFile;
+import org.jvss.logical.VssProject;
+import org.jvss.logical.VssRevision;
+import org.jvss.physical.LatencyFileSource;
+import org.jvss.physical.LocalFileSource;
+
+import java.io.IOException;
+
+/**
+ * Measures how much prefetching shortens a walk of the whole database over a
+ * high-latency file source.
+ * <p>
+ * The walk reads every project and the user and comment of every revision of
+ * every file, as the revision analyzer does, once without prefetching and
+ * once with it, over a {@link LatencyFileSource} that delays each operation.
+ * Arguments: database path, encoding, delay per operation in milliseconds
+ * (default 20) and prefetch pool size in bytes (default 64MB).
+ */
+public class PrefetchBenchmark
+{
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length < 2)
+      {
+         System.err.println("Usage: PrefetchBenchmark <database> <encoding> [latency ms] [prefetch bytes]");
+         System.exit(1);
+      }
+      String path = args[0];
+      String encoding = args[1];
+      long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+      long prefetchSize = args.length > 3 ? Long.parseLong(args[3]) : 64L * 1024 * 1024;
+
+      long plain = walk(path, encoding, latencyMillis, 0);
+      long prefetched = walk(path, encoding, latencyMillis, prefetchSize);
+      System.out.format("Latency %d ms: %d ms without prefetching, %d ms with it (%.1fx)%n", latencyMillis, plain,
+         prefetched, prefetched > 0 ? (double)plain / prefetched : 0.0);
+   }
+
+   private static long walk(String path, String encoding, long latencyMillis, long prefetchSize) throws IOException
+   {
+      VssDatabaseFactory df = new VssDatabaseFactory(path, encoding);
+      df.setFileSource(new LatencyFileSource(LocalFileSource.INSTANCE, latencyMillis));
+      df.setPrefetchSize(prefetchSize);
+      long start = System.currentTimeMillis();
+      VssDatabase db = df.Open();
+      int revisions = walk(db.getRootProject());
+      long elapsed = System.currentTimeMillis() - start;
+      System.out.format("%d revisions in %d ms, prefetch %s%n", revisions, elapsed,
+         db.getPrefetcher() != null ? db.getPrefetcher() : "off");
+      db.close();
+      return elapsed;
+   }
+
+   private static int walk(VssProject project)
+   {
+      int revisions = 0;
+      for (VssFile file : project.getFiles())
+      {
+         for (VssRevision revision : file.getRevisions())
+         {
+            revision.getUser();
+            revision.getComment();
+            ++revisions;
+         }
+      }
+      for (VssProject subproject : project.getProjects())
+      {
+         revisions += walk(subproject);
+      }
+      return revisions;
+   }
+}
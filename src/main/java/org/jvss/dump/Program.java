@@ -24,6 +24,8 @@ import org.jvss.physical.ItemFile;
 import org.jvss.physical.ItemHeaderRecord.ItemType;
 import org.jvss.physical.NameFile;
 import org.jvss.physical.NameRecord;
+import org.jvss.physical.PhysicalName;
+import org.jvss.physical.RecordCursor;
 import org.jvss.physical.RevisionRecord;
 import org.jvss.physical.RevisionRecord.Action;
 import org.jvss.physical.VssRecord;
@@ -54,6 +56,7 @@ public class Program
       String repoPath = "/home/sj/java/tmp/vss";//args[argIndex];
       VssDatabaseFactory df = new VssDatabaseFactory(repoPath);
       df.setEncoding("Cp1251");
+      df.setTreeSnapshotFile(new File(repoPath + ".tree"));
       VssDatabase db = df.Open();
 
       System.out.println("File hierarchy:");
@@ -85,7 +88,8 @@ public class Program
          for (String dataPath : dataPaths)
          {
             String dataFile = new File(parentPath, dataPath.toLowerCase()).getAbsolutePath();
-            boolean orphaned = !tree.getPhysicalNames().contains(dataPath);
+            boolean orphaned =
+               !PhysicalName.isValid(dataPath) || !tree.getPhysicalNames().contains(PhysicalName.encode(dataPath));
             System.out.println(Separator);
             System.out.format("%s%s", dataFile, orphaned ? " (orphaned)" : "");
             System.out.println();
@@ -106,6 +110,7 @@ public class Program
       System.out.println();
       System.out.format("File actions: {0}", formatCollection(fileActions));
       System.out.println();
+      db.close();
    }
 
    private static Set<Action> projectActions = new HashSet<Action>();
@@ -134,9 +139,14 @@ public class Program
          ItemFile itemFile = new ItemFile(filename, "Cp1251");
          itemFile.getHeader().getHeader().dump(System.out);
          itemFile.getHeader().dump(System.out);
-         VssRecord record = itemFile.GetNextRecord(true);
-         while (record != null)
+         RecordCursor cursor = itemFile.openCursor();
+         while (cursor.next())
          {
+            VssRecord record = cursor.read();
+            if (record == null)
+            {
+               continue;
+            }
             record.getHeader().dump(System.out);
             record.dump(System.out);
             if (record instanceof RevisionRecord)
@@ -154,7 +164,6 @@ public class Program
                   }
                }
             }
-            record = itemFile.GetNextRecord(true);
          }
       }
       catch (Exception e)
@@ -171,12 +180,16 @@ public class Program
          NameFile nameFile = new NameFile(filename, "Cp1251");
          nameFile.getHeader().getHeader().dump(System.out);
          nameFile.getHeader().dump(System.out);
-         NameRecord name = nameFile.getNextName();
-         while (name != null)
+         RecordCursor cursor = nameFile.openCursor();
+         NameRecord name = new NameRecord();
+         while (cursor.next())
          {
-            name.getHeader().dump(System.out);
-            name.dump(System.out);
-            name = nameFile.getNextName();
+            if (cursor.getSignatureCode() == NameRecord.SIGNATURE_CODE)
+            {
+               cursor.read(name);
+               name.getHeader().dump(System.out);
+               name.dump(System.out);
+            }
          }
       }
       catch (Exception e)
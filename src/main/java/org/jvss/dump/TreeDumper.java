@@ -18,13 +18,12 @@
  */
 package org.jvss.dump;
 
+import org.jvss.hash.LongHashSet;
 import org.jvss.logical.VssFile;
 import org.jvss.logical.VssProject;
 import org.jvss.logical.VssRevision;
 
 import java.io.PrintStream;
-import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Dumps the VSS project/file hierarchy to a text writer.
@@ -34,14 +33,14 @@ public class TreeDumper
 
    private final PrintStream writer;
 
-   private final Set<String> physicalNames;
+   private final LongHashSet physicalNames;
 
    private boolean includeRevisions;
 
    public TreeDumper(PrintStream writer)
    {
       this.writer = writer;
-      this.physicalNames = new TreeSet<String>();
+      this.physicalNames = new LongHashSet();
    }
 
    /**
@@ -70,9 +69,9 @@ public class TreeDumper
    }
 
    /**
-    * @return the physicalNames
+    * @return the physicalNames, packed
     */
-   public Set<String> getPhysicalNames()
+   public LongHashSet getPhysicalNames()
    {
       return physicalNames;
    }
@@ -91,7 +90,7 @@ public class TreeDumper
          indentBuilder.append(' ');
       }
       String indentStr = indentBuilder.toString();
-      physicalNames.add(project.getPhysicalName().toLowerCase());
+      physicalNames.add(project.getItemName().getPhysicalKey());
       writer.printf("%s%s/ (%s)", indentStr, project.getName(), project.getPhysicalName());
       writer.println();
 
@@ -102,7 +101,7 @@ public class TreeDumper
 
       for (VssFile file : project.getFiles())
       {
-         physicalNames.add(file.getPhysicalName().toLowerCase());
+         physicalNames.add(file.getItemName().getPhysicalKey());
          writer.format("%s  %s (%s) - %s", indentStr, file.getName(), file.getPhysicalName(), file.GetPath(project));
          writer.println();
          if (includeRevisions)
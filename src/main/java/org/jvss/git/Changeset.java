@@ -18,10 +18,10 @@
  */
 package org.jvss.git;
 
+import org.jvss.hash.LongHashSet;
+
 import java.util.Date;
-import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Set;
 
 /**
  * Represents a set of revisions made by a particular person at a particular
@@ -37,7 +37,7 @@ public class Changeset
 
    private final LinkedList<Revision> revisions = new LinkedList<Revision>();
 
-   private final Set<String> targetFiles = new HashSet<String>();
+   private final LongHashSet targetFiles = new LongHashSet();
 
    /**
     * @return the dateTime
@@ -99,9 +99,9 @@ public class Changeset
    }
 
    /**
-    * @return the targetFiles
+    * @return the targetFiles, as packed physical names
     */
-   public Set<String> getTargetFiles()
+   public LongHashSet getTargetFiles()
    {
       return targetFiles;
    }
@@ -20,6 +20,7 @@ package org.jvss.git;
 
 import org.jvss.logical.VssAction.VssActionType;
 import org.jvss.logical.VssAction.VssNamedAction;
+import org.jvss.physical.PhysicalName;
 
 import java.util.Date;
 import java.util.HashMap;
@@ -125,13 +126,13 @@ public class ChangesetBuilder
             // determine target of project revisions
             VssActionType actionType = revision.getAction().type();
 
-            String targetFile = revision.getItem().getPhysicalName();
+            long targetFile = revision.getPhysicalKey();
             if (revision.getAction() instanceof VssNamedAction)
             {
                VssNamedAction namedAction = (VssNamedAction)revision.getAction();
                if (namedAction != null)
                {
-                  targetFile = namedAction.name().getPhysicalName();
+                  targetFile = namedAction.name().getPhysicalKey();
                }
             }
 
@@ -181,7 +182,8 @@ public class ChangesetBuilder
                }
                else if (!nonconflicting && change.getTargetFiles().contains(targetFile))
                {
-                  logger.WriteLine(String.format("NOTE: Splitting changeset due to file conflict on %s:", targetFile));
+                  logger.WriteLine(String.format("NOTE: Splitting changeset due to file conflict on %s:",
+                     PhysicalName.decode(targetFile)));
                   flush = true;
                }
 
@@ -262,8 +264,9 @@ public class ChangesetBuilder
 
    private boolean hasSameComment(Revision rev1, Revision rev2)
    {
-      return !(rev1.getComment() == null || rev1.getComment().length() == 0)
-         && rev1.getComment().equals(rev2.getComment());
+      // comments are interned, so equal comments have equal ids
+      return rev1.getCommentId() == rev2.getCommentId() && rev1.getComment() != null
+         && rev1.getComment().length() > 0;
    }
 
    private void addChangeset(Changeset change)
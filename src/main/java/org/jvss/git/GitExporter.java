@@ -73,6 +73,12 @@ public class GitExporter
 
    private final GitCommandHandler git;
 
+   private int lookAheadThreads = Runtime.getRuntime().availableProcessors();
+
+   private long lookAheadBytes = 64L * 1024 * 1024;
+
+   private RevisionLookAhead lookAhead;
+
    public GitExporter(Logger logger, RevisionAnalyzer revisionAnalyzer, ChangesetBuilder changesetBuilder,
       GitCommandHandler git)
    {
@@ -83,6 +89,43 @@ public class GitExporter
       this.changesetBuilder = changesetBuilder;
    }
 
+   /**
+    * @param lookAheadThreads
+    *           the number of threads rebuilding the contents of upcoming file
+    *           revisions during the replay; 0 rebuilds each revision when it
+    *           is replayed
+    */
+   public void setLookAheadThreads(int lookAheadThreads)
+   {
+      this.lookAheadThreads = lookAheadThreads;
+   }
+
+   /**
+    * @return the lookAheadThreads
+    */
+   public int getLookAheadThreads()
+   {
+      return lookAheadThreads;
+   }
+
+   /**
+    * @param lookAheadBytes
+    *           bound on the total size of the revisions rebuilt ahead of the
+    *           replay
+    */
+   public void setLookAheadBytes(long lookAheadBytes)
+   {
+      this.lookAheadBytes = lookAheadBytes;
+   }
+
+   /**
+    * @return the lookAheadBytes
+    */
+   public long getLookAheadBytes()
+   {
+      return lookAheadBytes;
+   }
+
    public void exportToGit(String repoPath)
    {
       //       workQueue.AddLast(delegate(object work)
@@ -144,8 +187,27 @@ public class GitExporter
       }
 
       // replay each changeset
-      int changesetId = 1;
       List<Changeset> changesets = changesetBuilder.getChangesets();
+      lookAhead =
+         lookAheadThreads > 0 ? new RevisionLookAhead(database, changesets, lookAheadThreads, lookAheadBytes) : null;
+      try
+      {
+         replayChangesets(pathMapper, changesets);
+      }
+      finally
+      {
+         if (lookAhead != null)
+         {
+            logger.WriteLine("Look-ahead: " + lookAhead);
+            lookAhead.shutdown();
+            lookAhead = null;
+         }
+      }
+   }
+
+   private void replayChangesets(VssPathMapper pathMapper, List<Changeset> changesets)
+   {
+      int changesetId = 1;
       int commitCount = 0;
       int tagCount = 0;
       //var replayStopwatch = new Stopwatch();
@@ -257,6 +319,10 @@ public class GitExporter
       LinkedList<Revision> labels)
    {
       boolean needCommit = false;
+      if (lookAhead != null)
+      {
+         lookAhead.nextChangeset();
+      }
       for (Revision revision : changeset.getRevisions())
       {
          //           if (workQueue.IsAborting)
@@ -705,7 +771,11 @@ public class GitExporter
       {
          item = (VssFile)database.GetItemPhysical(physical);
          revision = item.getRevision(version);
-         contents = revision.getContents();
+         contents = lookAhead != null ? lookAhead.getContents(physical, version) : null;
+         if (contents == null)
+         {
+            contents = revision.getContents();
+         }
       }
       catch (Exception e)
       {
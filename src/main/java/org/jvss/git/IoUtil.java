@@ -92,7 +92,8 @@ public class IoUtil
       {
 
          int nRead;
-         byte[] data = new byte[is.available()];
+         // available() may be 0 for streams that have more to read
+         byte[] data = new byte[8192];
 
          while ((nRead = is.read(data, 0, data.length)) != -1)
          {
@@ -6,6 +6,8 @@ import org.jvss.logical.VssItem;
 import org.jvss.logical.VssPathException;
 import org.jvss.logical.VssProject;
 
+import java.io.File;
+
 /**
  *
  */
@@ -37,6 +39,8 @@ public class MainImporter
 
          VssDatabaseFactory df = new VssDatabaseFactory("/home/sj/java/tmp/vss");
          df.setEncoding("Cp1251");
+         df.setTreeSnapshotFile(new File("/home/sj/java/tmp/vss.tree"));
+         df.setRevisionStoreDir(new File("/home/sj/java/tmp/vss.store"));
          VssDatabase db = df.Open();
 
          String path = "$";//vssProjectTextBox.Text;
@@ -88,6 +92,7 @@ public class MainImporter
             //                }
             gitExporter.exportToGit(outGit);//ExportToGit(outDirTextBox.Text);
          }
+         db.close();
 
          //            workQueue.Idle += delegate
          //            {
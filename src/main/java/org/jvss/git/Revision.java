@@ -20,33 +20,49 @@ package org.jvss.git;
 
 import org.jvss.logical.VssAction;
 import org.jvss.logical.VssItemName;
+import org.jvss.physical.PhysicalName;
 
 import java.util.Date;
 
 /**
  * Represents a single revision to a file or directory.
+ * <p>
+ * The user, comment and logical name of the item are stored as ids in the
+ * {@link SymbolTable} of the analyzer that created the revision, and the
+ * physical name in its packed form, so that revisions share the strings they
+ * have in common.
  */
 public class Revision
 {
-   private final Date dateTime;
+   private final SymbolTable symbols;
 
-   private final String user;
+   private final long time;
 
-   private final VssItemName item;
+   private final int userId;
+
+   private final long physicalKey;
+
+   private final int logicalNameId;
+
+   private final boolean isProject;
 
    private final int version;
 
-   private final String comment;
+   private final int commentId;
 
    private final VssAction action;
 
-   public Revision(Date dateTime, String user, VssItemName item, int version, String comment, VssAction action)
+   public Revision(SymbolTable symbols, Date dateTime, String user, VssItemName item, int version, String comment,
+      VssAction action)
    {
-      this.dateTime = dateTime;
-      this.user = user;
-      this.item = item;
+      this.symbols = symbols;
+      this.time = dateTime.getTime();
+      this.userId = symbols.intern(user);
+      this.physicalKey = item.getPhysicalKey();
+      this.logicalNameId = symbols.intern(item.getLogicalName());
+      this.isProject = item.isProject();
       this.version = version;
-      this.comment = comment;
+      this.commentId = symbols.intern(comment);
       this.action = action;
    }
 
@@ -55,7 +71,7 @@ public class Revision
     */
    public Date getDateTime()
    {
-      return dateTime;
+      return new Date(time);
    }
 
    /**
@@ -63,7 +79,15 @@ public class Revision
     */
    public String getUser()
    {
-      return user;
+      return symbols.get(userId);
+   }
+
+   /**
+    * @return the id of the user in the symbol table
+    */
+   public int getUserId()
+   {
+      return userId;
    }
 
    /**
@@ -71,7 +95,15 @@ public class Revision
     */
    public VssItemName getItem()
    {
-      return item;
+      return new VssItemName(symbols.get(logicalNameId), PhysicalName.decode(physicalKey), isProject);
+   }
+
+   /**
+    * @return the packed physical name of the item
+    */
+   public long getPhysicalKey()
+   {
+      return physicalKey;
    }
 
    /**
@@ -87,7 +119,15 @@ public class Revision
     */
    public String getComment()
    {
-      return comment;
+      return symbols.get(commentId);
+   }
+
+   /**
+    * @return the id of the comment in the symbol table
+    */
+   public int getCommentId()
+   {
+      return commentId;
    }
 
    /**
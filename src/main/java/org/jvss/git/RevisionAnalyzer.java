@@ -21,21 +21,23 @@ package org.jvss.git;
 import org.jvss.git.VssUtil.RecursionStatus;
 import org.jvss.git.VssUtil.VssFileCallback;
 import org.jvss.git.VssUtil.VssProjectCallback;
+import org.jvss.hash.LongHashSet;
+import org.jvss.logical.VssAction;
 import org.jvss.logical.VssAction.VssActionType;
+import org.jvss.logical.VssAction.VssLabelAction;
 import org.jvss.logical.VssAction.VssNamedAction;
 import org.jvss.logical.VssDatabase;
 import org.jvss.logical.VssFile;
 import org.jvss.logical.VssItem;
 import org.jvss.logical.VssProject;
 import org.jvss.logical.VssRevision;
+import org.jvss.physical.PhysicalName;
 import org.jvss.physical.RecordException;
 
 import java.util.Date;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -53,9 +55,11 @@ public class RevisionAnalyzer
 
    private final Map<Date, List<Revision>> sortedRevisions = new TreeMap<Date, List<Revision>>();
 
-   private final Set<String> processedFiles = new HashSet<String>();
+   private final LongHashSet processedFiles = new LongHashSet();
 
-   private final Set<String> destroyedFiles = new HashSet<String>();
+   private final LongHashSet destroyedFiles = new LongHashSet();
+
+   private final SymbolTable symbols = new SymbolTable();
 
    private int projectCount;
 
@@ -71,7 +75,7 @@ public class RevisionAnalyzer
 
    public boolean isDestroyed(String physicalName)
    {
-      return destroyedFiles.contains(physicalName);
+      return destroyedFiles.contains(PhysicalName.encode(physicalName));
    }
 
    /**
@@ -167,21 +171,29 @@ public class RevisionAnalyzer
    }
 
    /**
-    * @return the processedFiles
+    * @return the processedFiles, as packed physical names
     */
-   public Set<String> getProcessedFiles()
+   public LongHashSet getProcessedFiles()
    {
       return processedFiles;
    }
 
    /**
-    * @return the destroyedFiles
+    * @return the destroyedFiles, as packed physical names
     */
-   public Set<String> getDestroyedFiles()
+   public LongHashSet getDestroyedFiles()
    {
       return destroyedFiles;
    }
 
+   /**
+    * @return the symbol table shared by the revisions found
+    */
+   public SymbolTable getSymbols()
+   {
+      return symbols;
+   }
+
    public void addItem(VssProject project)
    {
       if (project == null)
@@ -260,9 +272,8 @@ public class RevisionAnalyzer
             }
 
             // only process shared files once (projects are never shared)
-            if (!processedFiles.contains(file.getPhysicalName()))
+            if (processedFiles.add(file.getItemName().getPhysicalKey()))
             {
-               processedFiles.add(file.getPhysicalName());
                processItem(file, path, exclusionMatcher[0]);
                ++fileCount;
             }
@@ -306,7 +317,7 @@ public class RevisionAnalyzer
                   // track destroyed files so missing history can be anticipated
                   // (note that Destroy actions on shared files simply delete
                   // that copy, so destroyed files can't be completely ignored)
-                  destroyedFiles.add(namedAction.name().getPhysicalName());
+                  destroyedFiles.add(namedAction.name().getPhysicalKey());
                }
 
                String targetPath = path + VssDatabase.ProjectSeparator + namedAction.name().getLogicalName();
@@ -317,9 +328,15 @@ public class RevisionAnalyzer
                }
             }
 
+            VssAction action = vssRevision.getAction();
+            if (action instanceof VssLabelAction)
+            {
+               // share the label text between the revisions of all labelled items
+               action = new VssLabelAction(symbols.canonical(((VssLabelAction)action).getLabel()));
+            }
             Revision revision =
-               new Revision(vssRevision.getDate(), vssRevision.getUser(), item.getItemName(), vssRevision.getVersion(),
-                  vssRevision.getComment(), vssRevision.getAction());
+               new Revision(symbols, vssRevision.getDate(), vssRevision.getUser(), item.getItemName(),
+                  vssRevision.getVersion(), vssRevision.getComment(), action);
 
             List<Revision> revisionSet = sortedRevisions.get(vssRevision.getDate());
             if (revisionSet == null)
@@ -0,0 +1,518 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.git;
+
+import org.jvss.logical.VssAction.VssActionType;
+import org.jvss.logical.VssDatabase;
+import org.jvss.logical.VssFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconstructs the contents of upcoming file revisions on background threads
+ * while changesets are replayed.
+ * <p>
+ * The changesets are scanned ahead of the replay for file edits and branches,
+ * whose contents are rebuilt in parallel, revisions with the longest delta
+ * chains first. The results are handed to the replay thread in changeset order
+ * through a window bounded both in revisions and in bytes; the scan only moves
+ * on as the replay takes revisions out of the window. Revisions the replay
+ * passes over, and those of the changesets it has finished, such as edits of
+ * files it does not export, are dropped from the window.
+ * <p>
+ * Each revision reserves its share of the byte bound when it is scheduled,
+ * estimated from the size of the data file, and a thread rebuilding it
+ * reserves more before its buffer grows past that, so revisions being rebuilt
+ * count as well as finished ones. The database's content cache has its own
+ * bound. A revision the replay reaches before any thread has started on it,
+ * one that would not fit in a quarter of the window or in what is left of it,
+ * and one that failed are not handed out, so that the replay reads it itself.
+ * Only the replay thread may call the public methods of this class.
+ */
+public class RevisionLookAhead
+{
+   /**
+    * The smallest buffer a revision is read into.
+    */
+   private static final int INITIAL_BUFFER = 8192;
+
+   private final VssDatabase database;
+
+   private final ThreadPoolExecutor executor;
+
+   private final int maxRevisions;
+
+   private final long maxBytes;
+
+   private final Iterator<Changeset> changesets;
+
+   private Iterator<Revision> revisions;
+
+   private int scanChangeset = -1;
+
+   private int replayChangeset = -1;
+
+   private final LinkedList<Slot> window = new LinkedList<Slot>();
+
+   private Slot last;
+
+   private Slot next;
+
+   private long sequence;
+
+   private long bytes;
+
+   private long hits;
+
+   private long misses;
+
+   /**
+    * @param threads
+    *           the number of threads rebuilding revisions
+    * @param maxBytes
+    *           bound on the total size of the revisions rebuilt but not yet
+    *           taken
+    */
+   public RevisionLookAhead(VssDatabase database, List<Changeset> changesets, int threads, long maxBytes)
+   {
+      this.database = database;
+      this.changesets = changesets.iterator();
+      this.maxRevisions = threads * 4;
+      this.maxBytes = maxBytes;
+      this.executor =
+         new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+               @Override
+               public Thread newThread(Runnable r)
+               {
+                  Thread thread = new Thread(r, "revision-look-ahead");
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+      fill();
+   }
+
+   /**
+    * Takes the given revision out of the window, dropping the revisions
+    * before it. The revision last taken may be taken again, for files
+    * written to several paths.
+    * 
+    * @return the contents of the revision, or null if they were not rebuilt
+    *         ahead
+    */
+   public InputStream getContents(String physicalName, int version)
+   {
+      if (last != null && last.matches(physicalName, version))
+      {
+         return last.contents != null ? new ByteArrayInputStream(last.contents, 0, last.length) : null;
+      }
+
+      Slot found = null;
+      for (Slot slot : window)
+      {
+         if (slot.matches(physicalName, version))
+         {
+            found = slot;
+            break;
+         }
+      }
+      if (found == null)
+      {
+         ++misses;
+         return null;
+      }
+
+      while (window.getFirst() != found)
+      {
+         release(window.removeFirst());
+      }
+      window.removeFirst();
+      byte[] contents = take(found);
+      last = found;
+      fill();
+      if (contents == null)
+      {
+         ++misses;
+         return null;
+      }
+      ++hits;
+      return new ByteArrayInputStream(contents, 0, found.length);
+   }
+
+   /**
+    * Tells the look-ahead that the replay has moved on to the next changeset,
+    * dropping the revisions of the earlier ones that were never taken.
+    */
+   public void nextChangeset()
+   {
+      ++replayChangeset;
+      while (!window.isEmpty() && window.getFirst().changeset < replayChangeset)
+      {
+         release(window.removeFirst());
+      }
+      if (next != null && next.changeset < replayChangeset)
+      {
+         next = null;
+      }
+      fill();
+   }
+
+   /**
+    * Stops the background threads, abandoning the revisions not yet taken.
+    */
+   public void shutdown()
+   {
+      executor.shutdownNow();
+      synchronized (this)
+      {
+         for (Slot slot : window)
+         {
+            release(slot);
+         }
+      }
+      window.clear();
+      last = null;
+   }
+
+   /**
+    * @return the number of revisions handed out from the window
+    */
+   public long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the number of revisions the replay had to read itself
+    */
+   public long getMisses()
+   {
+      return misses;
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("%d hits, %d misses", hits, misses);
+   }
+
+   /**
+    * Schedules upcoming revisions until the window is full.
+    */
+   private void fill()
+   {
+      while (window.size() < maxRevisions)
+      {
+         if (next == null)
+         {
+            Revision revision = nextRevision();
+            if (revision == null)
+            {
+               break;
+            }
+            next = schedule(revision);
+         }
+         if (!reserve(next, next.reserved))
+         {
+            break;
+         }
+         window.addLast(next);
+         executor.execute(next);
+         next = null;
+      }
+   }
+
+   /**
+    * @return a slot for the given revision, ranked by the length of its delta
+    *         chain, with a reservation estimated from its data file
+    */
+   private Slot schedule(Revision revision)
+   {
+      String physicalName = revision.getItem().getPhysicalName();
+      int version = revision.getVersion();
+      int chainLength = 0;
+      long estimate = 0;
+      try
+      {
+         VssFile file = (VssFile)database.GetItemPhysical(physicalName);
+         chainLength = file.getRevisionCount() - version;
+         estimate = database.getFileSource().length(file.getDataPath().toLowerCase());
+      }
+      catch (IOException e)
+      {
+         // the replay reports missing files when it gets to them
+      }
+      catch (RuntimeException e)
+      {
+         // the replay reports missing files when it gets to them
+      }
+      Slot slot = new Slot(physicalName, version, scanChangeset, chainLength, sequence++);
+      slot.reserved = Math.min(maxBytes / 4, Math.max(INITIAL_BUFFER, estimate));
+      return slot;
+   }
+
+   private Revision nextRevision()
+   {
+      while (true)
+      {
+         while (revisions == null || !revisions.hasNext() || scanChangeset < replayChangeset)
+         {
+            if (!changesets.hasNext())
+            {
+               return null;
+            }
+            revisions = changesets.next().getRevisions().iterator();
+            ++scanChangeset;
+         }
+         Revision revision = revisions.next();
+         VssActionType actionType = revision.getAction().type();
+         if (!revision.getItem().isProject()
+            && (actionType == VssActionType.Edit || actionType == VssActionType.Branch))
+         {
+            return revision;
+         }
+      }
+   }
+
+   /**
+    * Adds to the bytes reserved by the given revision, unless it has been
+    * released or the bound would be exceeded.
+    *
+    * @return whether the bytes were reserved
+    */
+   private synchronized boolean reserve(Slot slot, long size)
+   {
+      if (slot.released || bytes + size > maxBytes)
+      {
+         return false;
+      }
+      bytes += size;
+      if (slot.scheduled)
+      {
+         slot.reserved += size;
+      }
+      slot.scheduled = true;
+      return true;
+   }
+
+   /**
+    * Waits for the given revision to be rebuilt, unless no thread has started
+    * on it yet.
+    */
+   private byte[] take(Slot slot)
+   {
+      synchronized (this)
+      {
+         try
+         {
+            while (slot.started && !slot.done)
+            {
+               wait();
+            }
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         release(slot);
+         return slot.done ? slot.contents : null;
+      }
+   }
+
+   /**
+    * Gives back part of the bytes reserved by the given revision.
+    */
+   private synchronized void unreserve(Slot slot, long size)
+   {
+      if (!slot.released)
+      {
+         bytes -= size;
+         slot.reserved -= size;
+      }
+   }
+
+   /**
+    * Gives back the bytes reserved by the given revision, and keeps it from
+    * being started.
+    */
+   private synchronized void release(Slot slot)
+   {
+      slot.started = true;
+      if (!slot.released)
+      {
+         bytes -= slot.reserved;
+      }
+      slot.released = true;
+   }
+
+   /**
+    * Reads the given revision into a buffer within its reservation, growing
+    * the reservation as needed.
+    *
+    * @return the buffer, holding {@link Slot#length} bytes, or null if the
+    *         revision does not fit or could not be read
+    */
+   private byte[] reconstruct(Slot slot)
+   {
+      try
+      {
+         InputStream contents =
+            ((VssFile)database.GetItemPhysical(slot.physicalName)).getRevision(slot.version).getContents();
+         try
+         {
+            long limit = maxBytes / 4;
+            byte[] buffer = new byte[(int)slot.reserved];
+            int length = 0;
+            int count;
+            while ((count = contents.read(buffer, length, buffer.length - length)) >= 0)
+            {
+               length += count;
+               if (length == buffer.length)
+               {
+                  // the buffer is full; only grow it if there is more to read
+                  int more = contents.read();
+                  if (more < 0)
+                  {
+                     break;
+                  }
+                  long capacity = Math.min(limit, (long)buffer.length * 2);
+                  // both buffers are held while copying
+                  if (capacity <= buffer.length || !reserve(slot, capacity))
+                  {
+                     return null;
+                  }
+                  int previous = buffer.length;
+                  buffer = Arrays.copyOf(buffer, (int)capacity);
+                  unreserve(slot, previous);
+                  buffer[length++] = (byte)more;
+               }
+            }
+            slot.length = length;
+            return buffer;
+         }
+         finally
+         {
+            contents.close();
+         }
+      }
+      catch (IOException e)
+      {
+         return null;
+      }
+      catch (RuntimeException e)
+      {
+         // the replay reports the error when it reads the revision itself
+         return null;
+      }
+   }
+
+   /**
+    * A revision in the window, ordered in the queue of the executor by the
+    * length of its delta chain, longest first, then by its position in the
+    * replay.
+    */
+   private class Slot implements Runnable, Comparable<Slot>
+   {
+      private final String physicalName;
+
+      private final int version;
+
+      private final int changeset;
+
+      private final int chainLength;
+
+      private final long position;
+
+      private boolean started;
+
+      private boolean done;
+
+      private boolean released;
+
+      private boolean scheduled;
+
+      private long reserved;
+
+      private byte[] contents;
+
+      private int length;
+
+      Slot(String physicalName, int version, int changeset, int chainLength, long position)
+      {
+         this.physicalName = physicalName;
+         this.version = version;
+         this.changeset = changeset;
+         this.chainLength = chainLength;
+         this.position = position;
+      }
+
+      boolean matches(String physicalName, int version)
+      {
+         return this.version == version && this.physicalName.equalsIgnoreCase(physicalName);
+      }
+
+      /**
+       * @see java.lang.Runnable#run()
+       */
+      @Override
+      public void run()
+      {
+         synchronized (RevisionLookAhead.this)
+         {
+            if (started)
+            {
+               return;
+            }
+            started = true;
+         }
+         byte[] result = reconstruct(this);
+         synchronized (RevisionLookAhead.this)
+         {
+            contents = result;
+            done = true;
+            RevisionLookAhead.this.notifyAll();
+         }
+      }
+
+      /**
+       * @see java.lang.Comparable#compareTo(java.lang.Object)
+       */
+      @Override
+      public int compareTo(Slot other)
+      {
+         if (chainLength != other.chainLength)
+         {
+            return chainLength > other.chainLength ? -1 : 1;
+         }
+         return position < other.position ? -1 : position > other.position ? 1 : 0;
+      }
+   }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.git;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings that recur across revisions, such as user names, logical
+ * names and comments, assigning each distinct string a dense int id.
+ * <p>
+ * Revisions store the ids instead of their own copies of the strings, so each
+ * distinct string is kept once however many revisions refer to it. The null
+ * string has the id -1. Ids are looked up in an open-addressing table holding
+ * only ints. Interning must not run concurrently with other calls; once it is
+ * done, lookups are safe from any thread.
+ */
+public class SymbolTable
+{
+   public static final int NULL_ID = -1;
+
+   private String[] symbols = new String[64];
+
+   private int size;
+
+   /**
+    * Slots holding symbol ids plus one; 0 marks an empty slot.
+    */
+   private int[] table = new int[128];
+
+   private int shift = 32 - 7;
+
+   /**
+    * @return the id of the string, assigning the next id if the string has
+    *         not been seen yet
+    */
+   public int intern(String symbol)
+   {
+      if (symbol == null)
+      {
+         return NULL_ID;
+      }
+      int mask = table.length - 1;
+      int slot = hash(symbol);
+      while (table[slot] != 0)
+      {
+         int id = table[slot] - 1;
+         if (symbols[id].equals(symbol))
+         {
+            return id;
+         }
+         slot = slot + 1 & mask;
+      }
+      if (size == symbols.length)
+      {
+         symbols = Arrays.copyOf(symbols, size * 2);
+      }
+      int id = size++;
+      symbols[id] = symbol;
+      table[slot] = id + 1;
+      if (size * 2 > table.length)
+      {
+         rehash(table.length * 2);
+      }
+      return id;
+   }
+
+   /**
+    * @return the shared instance of a string equal to the given one
+    */
+   public String canonical(String symbol)
+   {
+      return get(intern(symbol));
+   }
+
+   /**
+    * @return the string with the given id
+    */
+   public String get(int id)
+   {
+      return id == NULL_ID ? null : symbols[id];
+   }
+
+   /**
+    * @return the number of distinct strings
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   private void rehash(int capacity)
+   {
+      table = new int[capacity];
+      shift = 32 - Integer.numberOfTrailingZeros(capacity);
+      int mask = capacity - 1;
+      for (int id = 0; id < size; ++id)
+      {
+         int slot = hash(symbols[id]);
+         while (table[slot] != 0)
+         {
+            slot = slot + 1 & mask;
+         }
+         table[slot] = id + 1;
+      }
+   }
+
+   private int hash(String symbol)
+   {
+      return symbol.hashCode() * 0x9E3779B9 >>> shift;
+   }
+}
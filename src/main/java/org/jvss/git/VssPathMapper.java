@@ -18,15 +18,15 @@
  */
 package org.jvss.git;
 
+import org.jvss.hash.LongHashMap;
 import org.jvss.logical.VssDatabase;
 import org.jvss.logical.VssItemName;
+import org.jvss.physical.PhysicalName;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Tracks the names and locations of VSS projects and files as revisions are
@@ -396,16 +396,16 @@ public class VssPathMapper
       }
    }
 
-   // keyed by physical name
-   private final static Map<String, VssProjectInfo> projectInfos = new HashMap<String, VssProjectInfo>();
+   // keyed by packed physical name
+   private final static LongHashMap<VssProjectInfo> projectInfos = new LongHashMap<VssProjectInfo>();
 
-   private final static Map<String, VssProjectInfo> rootInfos = new HashMap<String, VssProjectInfo>();
+   private final static LongHashMap<VssProjectInfo> rootInfos = new LongHashMap<VssProjectInfo>();
 
-   private final static Map<String, VssFileInfo> fileInfos = new HashMap<String, VssFileInfo>();
+   private final static LongHashMap<VssFileInfo> fileInfos = new LongHashMap<VssFileInfo>();
 
    public boolean isProjectRooted(String project)
    {
-      VssProjectInfo projectInfo = projectInfos.get(project);
+      VssProjectInfo projectInfo = projectInfos.get(PhysicalName.encode(project));
       if (projectInfo != null)
       {
          return projectInfo.isRooted();
@@ -415,7 +415,7 @@ public class VssPathMapper
 
    public String getProjectPath(String project)
    {
-      VssProjectInfo projectInfo = projectInfos.get(project);
+      VssProjectInfo projectInfo = projectInfos.get(PhysicalName.encode(project));
       if (projectInfo != null)
       {
          return projectInfo.getPath();
@@ -428,13 +428,14 @@ public class VssPathMapper
       VssProjectInfo projectInfo = new VssProjectInfo(project, path);
       projectInfo.setRoot(true);
       projectInfo.setOriginalVssPath(originalVssPath);
-      projectInfos.put(project, projectInfo);
-      rootInfos.put(project, projectInfo);
+      long key = PhysicalName.encode(project);
+      projectInfos.put(key, projectInfo);
+      rootInfos.put(key, projectInfo);
    }
 
    public Iterable<VssFileInfo> getAllFiles(String project)
    {
-      VssProjectInfo projectInfo = projectInfos.get(project);
+      VssProjectInfo projectInfo = projectInfos.get(PhysicalName.encode(project));
       if (projectInfo != null)
       {
          return projectInfo.getAllFiles();
@@ -445,7 +446,7 @@ public class VssPathMapper
    public Iterable<VssProjectInfo> getAllProjects(String project)
    {
 
-      VssProjectInfo projectInfo = projectInfos.get(project);
+      VssProjectInfo projectInfo = projectInfos.get(PhysicalName.encode(project));
       if (projectInfo != null)
       {
          return projectInfo.getAllProjects();
@@ -457,14 +458,14 @@ public class VssPathMapper
    public Iterable<String> getFilePaths(String file, String underProject)
    {
       LinkedList<String> result = new LinkedList<String>();
-      VssFileInfo fileInfo = fileInfos.get(file);
+      VssFileInfo fileInfo = fileInfos.get(PhysicalName.encode(file));
 
       if (fileInfo != null)
       {
          VssProjectInfo underProjectInfo = null;
          if (underProject != null)
          {
-            if (!projectInfos.containsKey(underProject))
+            if (!projectInfos.containsKey(PhysicalName.encode(underProject)))
             {
                return result;
             }
@@ -488,7 +489,7 @@ public class VssPathMapper
 
    public int getFileVersion(String file)
    {
-      VssFileInfo fileInfo = fileInfos.get(file);
+      VssFileInfo fileInfo = fileInfos.get(PhysicalName.encode(file));
       if (fileInfo != null)
       {
          return fileInfo.getVersion();
@@ -667,11 +668,12 @@ public class VssPathMapper
 
    private VssProjectInfo getOrCreateProject(VssItemName name)
    {
-      VssProjectInfo projectInfo = projectInfos.get(name.getPhysicalName());
+      long key = name.getPhysicalKey();
+      VssProjectInfo projectInfo = projectInfos.get(key);
       if (projectInfo == null)
       {
          projectInfo = new VssProjectInfo(name.getPhysicalName(), name.getLogicalName());
-         projectInfos.put(name.getPhysicalName(), projectInfo);
+         projectInfos.put(key, projectInfo);
       }
 
       return projectInfo;
@@ -679,11 +681,12 @@ public class VssPathMapper
 
    private VssFileInfo getOrCreateFile(VssItemName name)
    {
-      VssFileInfo fileInfo = fileInfos.get(name.getPhysicalName());
+      long key = name.getPhysicalKey();
+      VssFileInfo fileInfo = fileInfos.get(key);
       if (fileInfo == null)
       {
          fileInfo = new VssFileInfo(name.getPhysicalName(), name.getLogicalName());
-         fileInfos.put(name.getPhysicalName(), fileInfo);
+         fileInfos.put(key, fileInfo);
       }
       return fileInfo;
    }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.hash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map from primitive longs to objects, stored in an open-addressing hash table
+ * with linear probing over parallel arrays. Compared to a
+ * <code>HashMap&lt;Long, V&gt;</code> it needs no boxing and no entry objects:
+ * a mapping costs between 16 and 32 bytes. Null values are not supported. The
+ * map is not thread-safe.
+ * 
+ * @param <V>
+ *           the type of the values
+ */
+public class LongHashMap<V>
+{
+   private long[] keys;
+
+   private Object[] values;
+
+   private int size;
+
+   private int shift;
+
+   /**
+    * 0 marks an empty slot, so the value of key 0 is kept apart.
+    */
+   private V zeroValue;
+
+   public LongHashMap()
+   {
+      this(0);
+   }
+
+   public LongHashMap(int expectedSize)
+   {
+      allocate(capacityFor(expectedSize));
+   }
+
+   /**
+    * @return the number of mappings
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   public boolean containsKey(long key)
+   {
+      return get(key) != null;
+   }
+
+   /**
+    * @return the value of the key, or null if there is none
+    */
+   @SuppressWarnings("unchecked")
+   public V get(long key)
+   {
+      if (key == 0)
+      {
+         return zeroValue;
+      }
+      return (V)values[slot(key)];
+   }
+
+   /**
+    * @return the previous value of the key, or null if there was none
+    */
+   @SuppressWarnings("unchecked")
+   public V put(long key, V value)
+   {
+      if (value == null)
+      {
+         throw new NullPointerException("Null values are not supported");
+      }
+      if (key == 0)
+      {
+         V previous = zeroValue;
+         zeroValue = value;
+         if (previous == null)
+         {
+            ++size;
+         }
+         return previous;
+      }
+      int slot = slot(key);
+      V previous = (V)values[slot];
+      keys[slot] = key;
+      values[slot] = value;
+      if (previous == null && ++size * 2 > keys.length)
+      {
+         rehash(keys.length * 2);
+      }
+      return previous;
+   }
+
+   /**
+    * @return the value the key had, or null if there was none
+    */
+   @SuppressWarnings("unchecked")
+   public V remove(long key)
+   {
+      if (key == 0)
+      {
+         V previous = zeroValue;
+         if (previous != null)
+         {
+            zeroValue = null;
+            --size;
+         }
+         return previous;
+      }
+      int slot = slot(key);
+      V previous = (V)values[slot];
+      if (previous == null)
+      {
+         return null;
+      }
+      // shift later mappings of the probe sequence back into the hole
+      int mask = keys.length - 1;
+      int next = slot + 1 & mask;
+      while (keys[next] != 0)
+      {
+         int ideal = hash(keys[next], shift);
+         if ((next - ideal & mask) >= (next - slot & mask))
+         {
+            keys[slot] = keys[next];
+            values[slot] = values[next];
+            slot = next;
+         }
+         next = next + 1 & mask;
+      }
+      keys[slot] = 0;
+      values[slot] = null;
+      --size;
+      return previous;
+   }
+
+   public void clear()
+   {
+      Arrays.fill(keys, 0);
+      Arrays.fill(values, null);
+      zeroValue = null;
+      size = 0;
+   }
+
+   /**
+    * @return the keys, in no particular order
+    */
+   public long[] keys()
+   {
+      long[] result = new long[size];
+      int count = 0;
+      if (zeroValue != null)
+      {
+         result[count++] = 0;
+      }
+      for (long key : keys)
+      {
+         if (key != 0)
+         {
+            result[count++] = key;
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return a snapshot of the values, in no particular order
+    */
+   @SuppressWarnings("unchecked")
+   public List<V> values()
+   {
+      List<V> result = new ArrayList<V>(size);
+      if (zeroValue != null)
+      {
+         result.add(zeroValue);
+      }
+      for (Object value : values)
+      {
+         if (value != null)
+         {
+            result.add((V)value);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return the smallest power of two table size keeping the given number of
+    *         keys at most half full
+    */
+   static int capacityFor(int expectedSize)
+   {
+      int capacity = 16;
+      while (capacity < expectedSize * 2)
+      {
+         capacity <<= 1;
+      }
+      return capacity;
+   }
+
+   /**
+    * Fibonacci hashing: spreads keys that differ only in their low bits, such
+    * as packed names sharing a prefix, over the whole table.
+    */
+   static int hash(long key, int shift)
+   {
+      return (int)(key * 0x9E3779B97F4A7C15L >>> shift);
+   }
+
+   /**
+    * @return the slot holding the key, or the empty slot where it belongs
+    */
+   private int slot(long key)
+   {
+      int mask = keys.length - 1;
+      int slot = hash(key, shift);
+      while (keys[slot] != 0 && keys[slot] != key)
+      {
+         slot = slot + 1 & mask;
+      }
+      return slot;
+   }
+
+   private void allocate(int capacity)
+   {
+      keys = new long[capacity];
+      values = new Object[capacity];
+      shift = 64 - Integer.numberOfTrailingZeros(capacity);
+   }
+
+   private void rehash(int capacity)
+   {
+      long[] oldKeys = keys;
+      Object[] oldValues = values;
+      allocate(capacity);
+      for (int i = 0; i < oldKeys.length; ++i)
+      {
+         if (oldKeys[i] != 0)
+         {
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+         }
+      }
+   }
+}
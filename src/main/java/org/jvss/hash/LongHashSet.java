@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.hash;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs, stored in an open-addressing hash table with linear
+ * probing. Compared to a <code>HashSet&lt;Long&gt;</code> it needs no boxing
+ * and no entry objects: a member costs between 8 and 16 bytes. The set is not
+ * thread-safe.
+ */
+public class LongHashSet
+{
+   private long[] keys;
+
+   private int size;
+
+   private int shift;
+
+   /**
+    * 0 marks an empty slot, so whether the set contains 0 is kept apart.
+    */
+   private boolean containsZero;
+
+   public LongHashSet()
+   {
+      this(0);
+   }
+
+   public LongHashSet(int expectedSize)
+   {
+      allocate(LongHashMap.capacityFor(expectedSize));
+   }
+
+   /**
+    * @return the number of members
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   public boolean contains(long key)
+   {
+      if (key == 0)
+      {
+         return containsZero;
+      }
+      return keys[slot(key)] != 0;
+   }
+
+   /**
+    * @return true if the key was not already in the set
+    */
+   public boolean add(long key)
+   {
+      if (key == 0)
+      {
+         if (containsZero)
+         {
+            return false;
+         }
+         containsZero = true;
+         ++size;
+         return true;
+      }
+      int slot = slot(key);
+      if (keys[slot] != 0)
+      {
+         return false;
+      }
+      keys[slot] = key;
+      if (++size * 2 > keys.length)
+      {
+         rehash(keys.length * 2);
+      }
+      return true;
+   }
+
+   /**
+    * @return true if the key was in the set
+    */
+   public boolean remove(long key)
+   {
+      if (key == 0)
+      {
+         if (!containsZero)
+         {
+            return false;
+         }
+         containsZero = false;
+         --size;
+         return true;
+      }
+      int slot = slot(key);
+      if (keys[slot] == 0)
+      {
+         return false;
+      }
+      // shift later members of the probe sequence back into the hole
+      int mask = keys.length - 1;
+      int next = slot + 1 & mask;
+      while (keys[next] != 0)
+      {
+         int ideal = LongHashMap.hash(keys[next], shift);
+         if ((next - ideal & mask) >= (next - slot & mask))
+         {
+            keys[slot] = keys[next];
+            slot = next;
+         }
+         next = next + 1 & mask;
+      }
+      keys[slot] = 0;
+      --size;
+      return true;
+   }
+
+   public void clear()
+   {
+      Arrays.fill(keys, 0);
+      containsZero = false;
+      size = 0;
+   }
+
+   /**
+    * @return the members, in no particular order
+    */
+   public long[] toArray()
+   {
+      long[] result = new long[size];
+      int count = 0;
+      if (containsZero)
+      {
+         result[count++] = 0;
+      }
+      for (long key : keys)
+      {
+         if (key != 0)
+         {
+            result[count++] = key;
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return the slot holding the key, or the empty slot where it belongs
+    */
+   private int slot(long key)
+   {
+      int mask = keys.length - 1;
+      int slot = LongHashMap.hash(key, shift);
+      while (keys[slot] != 0 && keys[slot] != key)
+      {
+         slot = slot + 1 & mask;
+      }
+      return slot;
+   }
+
+   private void allocate(int capacity)
+   {
+      keys = new long[capacity];
+      shift = 64 - Integer.numberOfTrailingZeros(capacity);
+   }
+
+   private void rehash(int capacity)
+   {
+      long[] oldKeys = keys;
+      allocate(capacity);
+      for (long key : oldKeys)
+      {
+         if (key != 0)
+         {
+            keys[slot(key)] = key;
+         }
+      }
+   }
+}
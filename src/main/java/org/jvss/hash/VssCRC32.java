@@ -18,6 +18,9 @@
  */
 package org.jvss.hash;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * This class generates a cumulative CRC value upon the contents of multiple
  * buffers, allowing a CRC value to be generated for data or a file in piecemeal
@@ -83,6 +86,28 @@ public class VssCRC32
       0xCABAC28A, 0x53B39330, 0x24B4A3A6, 0xBAD03605, 0xCDD70693, 0x54DE5729, 0x23D967BF, 0xB3667A2E, 0xC4614AB8,
       0x5D681B02, 0x2A6F2B94, 0xB40BBE37, 0xC30C8EA1, 0x5A05DF1B, 0x2D02EF8D};
 
+   /**
+    * Tables for slicing-by-8: entry k of table n is the CRC of byte k followed
+    * by n zero bytes, so eight input bytes can be folded in with eight
+    * independent lookups instead of a chain of eight dependent ones.
+    */
+   private static final int[][] g_SliceTables = new int[8][];
+
+   static
+   {
+      g_SliceTables[0] = g_CrcTable;
+      for (int n = 1; n < 8; ++n)
+      {
+         int[] previous = g_SliceTables[n - 1];
+         int[] table = new int[256];
+         for (int k = 0; k < 256; ++k)
+         {
+            table[k] = previous[k] >>> 8 ^ g_CrcTable[previous[k] & 0xFF];
+         }
+         g_SliceTables[n] = table;
+      }
+   }
+
    private int m_CRC;
 
    /**
@@ -130,15 +155,7 @@ public class VssCRC32
          return;
       }
 
-      int kBits;
-      int tCRC = m_CRC;
-      for (int index = 0; index < bufferSize; ++index)
-      {
-         kBits = (tCRC ^ buffer[index]) & 0xFF;
-         tCRC = tCRC >> 8 & 0xFFFFFF ^ g_CrcTable[kBits];
-      }
-
-      m_CRC = tCRC;
+      m_CRC = update(m_CRC, buffer, 0, bufferSize);
    }
 
    // Alternate version of the CRC-32 logic used for VSS.  It starts from zero
@@ -148,30 +165,82 @@ public class VssCRC32
    {
       // Unlike other implementation, the VSS version starts accumulating from
       // 0x00000000 instead of 0xFFFFFFFF.
-      int kBits;
-      int tCRC = 0;
-      for (int index = offset; index < bufferSize; ++index)
+      return update(0, buffer, offset, bufferSize);
+   }
+
+   public static short VssCrc16(byte[] buffer, int offset, int bufferSize)
+   {
+      int tCRC = VssCrc32(buffer, offset, bufferSize);
+
+      // Fold the 32-bit CRC in on itself with XOR.
+      return (short)(tCRC ^ tCRC >> 16);
+   }
+
+   public static int VssCrc32(ByteBuffer buffer, int offset, int bufferSize)
+   {
+      if (buffer.hasArray())
       {
-         kBits = (tCRC ^ buffer[index]) & 0xFF;
-         tCRC = tCRC >> 8 & 0xFFFFFF ^ g_CrcTable[kBits];
+         return VssCrc32(buffer.array(), buffer.arrayOffset() + offset, buffer.arrayOffset() + bufferSize);
       }
+      return update(0, buffer, offset, bufferSize);
+   }
 
+   public static short VssCrc16(ByteBuffer buffer, int offset, int bufferSize)
+   {
+      int tCRC = VssCrc32(buffer, offset, bufferSize);
+
+      // Fold the 32-bit CRC in on itself with XOR.
+      return (short)(tCRC ^ tCRC >> 16);
+   }
+
+   /**
+    * Accumulates the bytes from offset (inclusive) to end (exclusive) into the
+    * given CRC, eight bytes at a time.
+    */
+   private static int update(int tCRC, byte[] buffer, int offset, int end)
+   {
+      int index = offset;
+      for (; index + 8 <= end; index += 8)
+      {
+         int low = tCRC ^ (buffer[index] & 0xFF | (buffer[index + 1] & 0xFF) << 8 | (buffer[index + 2] & 0xFF) << 16
+            | buffer[index + 3] << 24);
+         int high = buffer[index + 4] & 0xFF | (buffer[index + 5] & 0xFF) << 8 | (buffer[index + 6] & 0xFF) << 16
+            | buffer[index + 7] << 24;
+         tCRC = slice(low, high);
+      }
+      for (; index < end; ++index)
+      {
+         tCRC = tCRC >>> 8 ^ g_CrcTable[(tCRC ^ buffer[index]) & 0xFF];
+      }
       return tCRC;
    }
 
-   public static short VssCrc16(byte[] buffer, int offset, int bufferSize)
+   private static int update(int tCRC, ByteBuffer buffer, int offset, int end)
    {
-      // Unlike other implementation, the VSS version starts accumulating from
-      // 0x00000000 instead of 0xFFFFFFFF.
-      int kBits;
-      int tCRC = 0;
-      for (int index = offset; index < bufferSize; ++index)
+      boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+      int index = offset;
+      for (; index + 8 <= end; index += 8)
+      {
+         int low = buffer.getInt(index);
+         int high = buffer.getInt(index + 4);
+         if (!littleEndian)
+         {
+            low = Integer.reverseBytes(low);
+            high = Integer.reverseBytes(high);
+         }
+         tCRC = slice(tCRC ^ low, high);
+      }
+      for (; index < end; ++index)
       {
-         kBits = (tCRC ^ buffer[index]) & 0xFF;
-         tCRC = tCRC >> 8 & 0xFFFFFF ^ g_CrcTable[kBits];
+         tCRC = tCRC >>> 8 ^ g_CrcTable[(tCRC ^ buffer.get(index)) & 0xFF];
       }
+      return tCRC;
+   }
 
-      // Fold the 32-bit CRC in on itself with XOR.
-      return (short)(tCRC ^ tCRC >> 16);
+   private static int slice(int low, int high)
+   {
+      int[][] t = g_SliceTables;
+      return t[7][low & 0xFF] ^ t[6][low >>> 8 & 0xFF] ^ t[5][low >>> 16 & 0xFF] ^ t[4][low >>> 24]
+         ^ t[3][high & 0xFF] ^ t[2][high >>> 8 & 0xFF] ^ t[1][high >>> 16 & 0xFF] ^ t[0][high >>> 24];
    }
 }
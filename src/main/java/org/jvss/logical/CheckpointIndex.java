@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.logical;
+
+import org.jvss.physical.LocalFileSource;
+import org.jvss.physical.SegmentedBuffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Full contents of every k-th revision of files with long histories, so that
+ * an old revision is rebuilt from the nearest newer checkpoint by merging at
+ * most k deltas rather than every delta back from the latest revision.
+ * <p>
+ * The checkpoints of a file are taken in one walk along its delta chain the
+ * first time a revision more than k versions old is asked for. They are kept
+ * in memory when they fit in a quarter of the memory budget; otherwise they
+ * are written to the spill directory if there is one, or the interval of that
+ * file is widened until they fit. Files are evicted least recently used first
+ * when the checkpoints in memory exceed the budget. Spilled checkpoints take
+ * no memory and are not evicted, so a checkpoint handed out is never deleted
+ * under its reader; they are deleted by {@link #close()}. The index is
+ * thread-safe; checkpoints are taken outside the lock, so two threads missing
+ * on the same file at once may both walk it, and the first one stored wins.
+ */
+public class CheckpointIndex
+{
+   /**
+    * The contents of one revision, and the position in the item files from
+    * which older revisions continue.
+    */
+   static class Checkpoint
+   {
+      private final int version;
+
+      private final String physicalName;
+
+      private final int index;
+
+      private final SegmentedBuffer contents;
+
+      private final File file;
+
+      Checkpoint(int version, String physicalName, int index, SegmentedBuffer contents, File file)
+      {
+         this.version = version;
+         this.physicalName = physicalName;
+         this.index = index;
+         this.contents = contents;
+         this.file = file;
+      }
+
+      /**
+       * @return the version
+       */
+      int getVersion()
+      {
+         return version;
+      }
+
+      /**
+       * @return the physical name of the item file to continue from
+       */
+      String getPhysicalName()
+      {
+         return physicalName;
+      }
+
+      /**
+       * @return the index of the next revision of the item file to continue
+       *         from
+       */
+      int getIndex()
+      {
+         return index;
+      }
+
+      /**
+       * @return the length of the contents
+       */
+      long length()
+      {
+         return file != null ? file.length() : contents.size();
+      }
+
+      /**
+       * @return a stream over the contents
+       */
+      InputStream open() throws IOException
+      {
+         if (file != null)
+         {
+            return LocalFileSource.INSTANCE.open(file.getPath());
+         }
+         return contents.open();
+      }
+
+      /**
+       * @return the contents, for applying deltas to
+       */
+      SegmentedBuffer map() throws IOException
+      {
+         if (file != null)
+         {
+            return LocalFileSource.INSTANCE.map(file.getPath());
+         }
+         return contents;
+      }
+   }
+
+   /**
+    * The checkpoints of one file, newest first.
+    */
+   private static class Checkpoints
+   {
+      private final Checkpoint[] checkpoints;
+
+      private final long bytes;
+
+      Checkpoints(Checkpoint[] checkpoints, long bytes)
+      {
+         this.checkpoints = checkpoints;
+         this.bytes = bytes;
+      }
+
+      void delete()
+      {
+         for (Checkpoint checkpoint : checkpoints)
+         {
+            if (checkpoint.file != null)
+            {
+               checkpoint.file.delete();
+            }
+         }
+      }
+   }
+
+   private final int interval;
+
+   private final long maxBytes;
+
+   private final File spillDir;
+
+   private final LinkedHashMap<String, Checkpoints> files = new LinkedHashMap<String, Checkpoints>(16, 0.75f, true);
+
+   private long bytes;
+
+   private long hits;
+
+   private long walks;
+
+   private long evictions;
+
+   /**
+    * @param interval
+    *           the number of versions between checkpoints, k
+    * @param maxBytes
+    *           the total size of the checkpoints to keep in memory
+    * @param spillDir
+    *           directory the checkpoints of files too large to keep in memory
+    *           are written to, or null to widen their interval instead
+    */
+   public CheckpointIndex(int interval, long maxBytes, File spillDir)
+   {
+      if (interval < 1)
+      {
+         throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+      }
+      this.interval = interval;
+      this.maxBytes = maxBytes;
+      this.spillDir = spillDir;
+   }
+
+   /**
+    * @return the oldest checkpoint of the file not older than the given
+    *         version, taking the checkpoints of the file if needed, or null
+    *         if the version is within the interval of the latest revision
+    */
+   Checkpoint find(VssFile file, int version) throws IOException
+   {
+      int count = file.getRevisionCount();
+      if (count - version <= interval)
+      {
+         return null;
+      }
+
+      String key = file.getPhysicalName().toUpperCase();
+      Checkpoints checkpoints;
+      synchronized (this)
+      {
+         checkpoints = files.get(key);
+         if (checkpoints != null)
+         {
+            ++hits;
+         }
+      }
+      if (checkpoints == null)
+      {
+         checkpoints = put(key, walk(file, count));
+      }
+
+      Checkpoint nearest = null;
+      for (Checkpoint checkpoint : checkpoints.checkpoints)
+      {
+         if (checkpoint.version < version)
+         {
+            break;
+         }
+         nearest = checkpoint;
+      }
+      return nearest;
+   }
+
+   private Checkpoints walk(VssFile file, int count) throws IOException
+   {
+      // the latest revision is about as large as any checkpoint will be
+      long size = file.getDatabase().getFileSource().length(file.getDataPath().toLowerCase());
+      long budget = maxBytes / 4;
+      int step = interval;
+      boolean spill = false;
+      if (size * (count / step) > budget)
+      {
+         if (spillDir != null)
+         {
+            spill = true;
+         }
+         else
+         {
+            step = budget > 0 ? (int)Math.min(count, (size * count + budget - 1) / budget) : count;
+            step = Math.max(step, interval);
+         }
+      }
+
+      synchronized (this)
+      {
+         ++walks;
+      }
+      Checkpoint[] checkpoints = new Checkpoint[(count - 1) / step];
+      long total = 0;
+      ContentsWalker walker = new ContentsWalker(file);
+      for (int i = 0; i < checkpoints.length; ++i)
+      {
+         int version = count - (i + 1) * step;
+         SegmentedBuffer contents = walker.moveTo(version);
+         if (spill)
+         {
+            checkpoints[i] =
+               new Checkpoint(version, walker.getPhysicalName(), walker.getIndex(), null, spill(file, version,
+                  contents));
+         }
+         else
+         {
+            checkpoints[i] = new Checkpoint(version, walker.getPhysicalName(), walker.getIndex(), contents, null);
+            total += contents.size();
+         }
+      }
+      return new Checkpoints(checkpoints, total);
+   }
+
+   private File spill(VssFile file, int version, SegmentedBuffer contents) throws IOException
+   {
+      if (!spillDir.isDirectory() && !spillDir.mkdirs())
+      {
+         throw new IOException("Cannot create directory " + spillDir);
+      }
+      File spilled = File.createTempFile(file.getPhysicalName() + "." + version + ".", ".cp", spillDir);
+      OutputStream output = new FileOutputStream(spilled);
+      try
+      {
+         byte[] buffer = new byte[8192];
+         int count;
+         for (long position = 0; (count = contents.read(position, buffer, 0, buffer.length)) > 0; position += count)
+         {
+            output.write(buffer, 0, count);
+         }
+      }
+      finally
+      {
+         output.close();
+      }
+      return spilled;
+   }
+
+   private synchronized Checkpoints put(String key, Checkpoints checkpoints)
+   {
+      Checkpoints existing = files.get(key);
+      if (existing != null)
+      {
+         checkpoints.delete();
+         return existing;
+      }
+      files.put(key, checkpoints);
+      bytes += checkpoints.bytes;
+      Iterator<Checkpoints> eldest = files.values().iterator();
+      while (bytes > maxBytes && eldest.hasNext())
+      {
+         Checkpoints evicted = eldest.next();
+         // spilled checkpoints free no memory
+         if (evicted == checkpoints || evicted.bytes == 0)
+         {
+            continue;
+         }
+         bytes -= evicted.bytes;
+         eldest.remove();
+         ++evictions;
+      }
+      return checkpoints;
+   }
+
+   /**
+    * Drops all checkpoints and deletes the spilled ones; the counters are
+    * kept.
+    */
+   public synchronized void close()
+   {
+      for (Checkpoints checkpoints : files.values())
+      {
+         checkpoints.delete();
+      }
+      files.clear();
+      bytes = 0;
+   }
+
+   /**
+    * @return the interval
+    */
+   public int getInterval()
+   {
+      return interval;
+   }
+
+   /**
+    * @return the maxBytes
+    */
+   public long getMaxBytes()
+   {
+      return maxBytes;
+   }
+
+   /**
+    * @return the spillDir
+    */
+   public File getSpillDir()
+   {
+      return spillDir;
+   }
+
+   /**
+    * @return the total size of the checkpoints kept in memory
+    */
+   public synchronized long getBytes()
+   {
+      return bytes;
+   }
+
+   /**
+    * @return the number of files with checkpoints
+    */
+   public synchronized int getSize()
+   {
+      return files.size();
+   }
+
+   /**
+    * @return the number of lookups served by checkpoints already taken
+    */
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the number of walks taken to checkpoint a file
+    */
+   public synchronized long getWalks()
+   {
+      return walks;
+   }
+
+   /**
+    * @return the evictions
+    */
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format("%d files, %d bytes, %d hits, %d walks, %d evictions", files.size(), bytes, hits, walks,
+         evictions);
+   }
+}
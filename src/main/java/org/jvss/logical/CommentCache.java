@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.logical;
+
+import org.jvss.physical.CommentRecord;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used cache of revision comments, keyed by the physical name of
+ * the item and the offset of the comment record in its item file, and bounded
+ * by the total length of the cached comments.
+ * <p>
+ * Several revisions, such as a label and the revision it labels, may refer to
+ * the same comment record, and analysis and export read the comment of a
+ * revision more than once; with the cache each record is decoded once and its
+ * text shared. The cache is thread-safe; records are read outside the lock.
+ */
+public class CommentCache
+{
+   private final long maxChars;
+
+   private final LinkedHashMap<Key, String> comments = new LinkedHashMap<Key, String>(16, 0.75f, true);
+
+   private long chars;
+
+   private long hits;
+
+   private long misses;
+
+   private long evictions;
+
+   /**
+    * @param maxChars
+    *           the total length of the comments to keep; 0 disables caching
+    */
+   public CommentCache(long maxChars)
+   {
+      this.maxChars = maxChars;
+   }
+
+   /**
+    * @return the text of the comment record at the given offset of the item
+    *         file of the given item, reading it from the file the item holds
+    *         if it is not cached
+    */
+   public String get(VssItem item, int offset)
+   {
+      Key key = new Key(item.getPhysicalName().toUpperCase(), offset);
+      synchronized (this)
+      {
+         String comment = comments.get(key);
+         if (comment != null)
+         {
+            ++hits;
+            return comment;
+         }
+         ++misses;
+      }
+
+      CommentRecord record = new CommentRecord();
+      item.getItemFile().ReadRecord(record, offset);
+      String comment = record.getComment();
+      if (maxChars == 0 || comment.length() > maxChars)
+      {
+         return comment;
+      }
+
+      synchronized (this)
+      {
+         String existing = comments.get(key);
+         if (existing != null)
+         {
+            return existing;
+         }
+         comments.put(key, comment);
+         chars += comment.length();
+         Iterator<String> eldest = comments.values().iterator();
+         while (chars > maxChars)
+         {
+            chars -= eldest.next().length();
+            eldest.remove();
+            ++evictions;
+         }
+      }
+      return comment;
+   }
+
+   /**
+    * Drops all cached comments; the counters are kept.
+    */
+   public synchronized void clear()
+   {
+      comments.clear();
+      chars = 0;
+   }
+
+   /**
+    * @return the maxChars
+    */
+   public long getMaxChars()
+   {
+      return maxChars;
+   }
+
+   /**
+    * @return the total length of the cached comments
+    */
+   public synchronized long getChars()
+   {
+      return chars;
+   }
+
+   /**
+    * @return the number of cached comments
+    */
+   public synchronized int getSize()
+   {
+      return comments.size();
+   }
+
+   /**
+    * @return the hits
+    */
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the misses
+    */
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   /**
+    * @return the evictions
+    */
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format("%d comments, %d chars, %d hits, %d misses, %d evictions", comments.size(), chars, hits,
+         misses, evictions);
+   }
+
+   private static class Key
+   {
+      final String physicalName;
+
+      final int offset;
+
+      Key(String physicalName, int offset)
+      {
+         this.physicalName = physicalName;
+         this.offset = offset;
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof Key))
+         {
+            return false;
+         }
+         Key other = (Key)obj;
+         return offset == other.offset && physicalName.equals(other.physicalName);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return physicalName.hashCode() * 31 + offset;
+      }
+   }
+}
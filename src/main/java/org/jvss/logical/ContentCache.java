@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.logical;
+
+import org.jvss.physical.ByteBufferInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used cache of reconstructed revision contents, keyed by the
+ * physical name of the file and the version, and bounded by the total size of
+ * the cached contents.
+ * <p>
+ * A file shared between projects, or revisited by an exporter, is then rebuilt
+ * from its deltas once. Contents may be kept in direct buffers, outside the
+ * heap. A revision larger than a quarter of the cache is not kept, so that a
+ * single large binary does not flush everything else; it is streamed from the
+ * data file as usual. The cache is thread-safe; contents are read outside the
+ * lock.
+ */
+public class ContentCache
+{
+   private final long maxBytes;
+
+   private final boolean direct;
+
+   private final LinkedHashMap<Key, ByteBuffer> contents = new LinkedHashMap<Key, ByteBuffer>(16, 0.75f, true);
+
+   private long bytes;
+
+   private long hits;
+
+   private long misses;
+
+   private long evictions;
+
+   /**
+    * @param maxBytes
+    *           the total size of the contents to keep; 0 disables caching
+    * @param direct
+    *           whether contents are kept in direct buffers instead of the heap
+    */
+   public ContentCache(long maxBytes, boolean direct)
+   {
+      this.maxBytes = maxBytes;
+      this.direct = direct;
+   }
+
+   /**
+    * @return the contents of the given version of the file, or null if they
+    *         are not cached
+    */
+   public InputStream get(String physicalName, int version)
+   {
+      if (maxBytes == 0)
+      {
+         return null;
+      }
+      Key key = new Key(physicalName.toUpperCase(), version);
+      synchronized (this)
+      {
+         ByteBuffer buffer = contents.get(key);
+         if (buffer != null)
+         {
+            ++hits;
+            return new ByteBufferInputStream(buffer);
+         }
+         ++misses;
+         return null;
+      }
+   }
+
+   /**
+    * @return whether contents of the given length would be kept; empty
+    *         contents are not, as they would never count against the bound
+    */
+   public boolean accepts(long length)
+   {
+      return maxBytes > 0 && length > 0 && length <= maxBytes / 4;
+   }
+
+   /**
+    * Reads the given contents in full and keeps them.
+    * 
+    * @param length
+    *           the length of the contents, which must be accepted by
+    *           {@link #accepts(long)}
+    * @return a stream over the contents read
+    */
+   public InputStream put(String physicalName, int version, InputStream stream, long length) throws IOException
+   {
+      ByteBuffer buffer;
+      try
+      {
+         buffer = read(stream, (int)length);
+      }
+      finally
+      {
+         stream.close();
+      }
+
+      Key key = new Key(physicalName.toUpperCase(), version);
+      synchronized (this)
+      {
+         ByteBuffer existing = contents.get(key);
+         if (existing != null)
+         {
+            return new ByteBufferInputStream(existing);
+         }
+         contents.put(key, buffer);
+         bytes += length;
+         Iterator<ByteBuffer> eldest = contents.values().iterator();
+         while (bytes > maxBytes)
+         {
+            bytes -= eldest.next().remaining();
+            eldest.remove();
+            ++evictions;
+         }
+      }
+      return new ByteBufferInputStream(buffer);
+   }
+
+   /**
+    * Drops all cached contents; the counters are kept.
+    */
+   public synchronized void clear()
+   {
+      contents.clear();
+      bytes = 0;
+   }
+
+   /**
+    * @return the maxBytes
+    */
+   public long getMaxBytes()
+   {
+      return maxBytes;
+   }
+
+   /**
+    * @return whether contents are kept in direct buffers
+    */
+   public boolean isDirect()
+   {
+      return direct;
+   }
+
+   /**
+    * @return the total size of the cached contents
+    */
+   public synchronized long getBytes()
+   {
+      return bytes;
+   }
+
+   /**
+    * @return the number of cached revisions
+    */
+   public synchronized int getSize()
+   {
+      return contents.size();
+   }
+
+   /**
+    * @return the hits
+    */
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the misses
+    */
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   /**
+    * @return the fraction of lookups that were hits, or 0 if there were none
+    */
+   public synchronized double getHitRate()
+   {
+      return hits + misses > 0 ? (double)hits / (hits + misses) : 0;
+   }
+
+   /**
+    * @return the evictions
+    */
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format("%d revisions, %d bytes, %d hits, %d misses (%.1f%% hits), %d evictions",
+         contents.size(), bytes, hits, misses, getHitRate() * 100, evictions);
+   }
+
+   private ByteBuffer read(InputStream stream, int length) throws IOException
+   {
+      if (!direct)
+      {
+         byte[] data = new byte[length];
+         readFully(stream, data, length);
+         return ByteBuffer.wrap(data);
+      }
+      ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+      byte[] chunk = new byte[Math.min(length, 64 * 1024)];
+      while (buffer.hasRemaining())
+      {
+         int n = Math.min(chunk.length, buffer.remaining());
+         readFully(stream, chunk, n);
+         buffer.put(chunk, 0, n);
+      }
+      buffer.flip();
+      return buffer;
+   }
+
+   private static void readFully(InputStream stream, byte[] data, int length) throws IOException
+   {
+      for (int count = 0; count < length;)
+      {
+         int n = stream.read(data, count, length - count);
+         if (n < 0)
+         {
+            throw new EOFException("Revision contents end early");
+         }
+         count += n;
+      }
+   }
+
+   private static class Key
+   {
+      final String physicalName;
+
+      final int version;
+
+      Key(String physicalName, int version)
+      {
+         this.physicalName = physicalName;
+         this.version = version;
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof Key))
+         {
+            return false;
+         }
+         Key other = (Key)obj;
+         return version == other.version && physicalName.equals(other.physicalName);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return physicalName.hashCode() * 31 + version;
+      }
+   }
+}
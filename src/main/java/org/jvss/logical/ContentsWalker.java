@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.logical;
+
+import org.jvss.physical.CompactDelta;
+import org.jvss.physical.DeltaRecord;
+import org.jvss.physical.FileSource;
+import org.jvss.physical.ItemFile;
+import org.jvss.physical.RecordNotFoundException;
+import org.jvss.physical.RevisionRecord.Action;
+import org.jvss.physical.RevisionRecord.BranchRevisionRecord;
+import org.jvss.physical.SegmentedBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Walks back from the latest revision of a file, which is the data file,
+ * applying the reverse delta of each edit, and following branches into the
+ * file they were branched from, in the same order as
+ * {@link VssFileRevision#getContents()}.
+ * <p>
+ * The position of the walker, the item file and revision index it has reached,
+ * is where {@link VssFileRevision#getContents()} would continue merging deltas
+ * for an older version.
+ */
+class ContentsWalker
+{
+   private final VssDatabase database;
+
+   private String physicalName;
+
+   private ItemFile itemFile;
+
+   private int index;
+
+   private SegmentedBuffer contents;
+
+   ContentsWalker(VssItem item) throws IOException
+   {
+      database = item.getDatabase();
+      physicalName = item.getPhysicalName();
+      itemFile = item.getItemFile();
+      index = itemFile.getIndexedRevisionCount() - 1;
+
+      FileSource source = database.getContentSource();
+      String dataPath = item.getDataPath().toLowerCase();
+      if (!source.exists(dataPath))
+      {
+         throw new RecordNotFoundException("File " + dataPath + " not found");
+      }
+      // the latest revision is mapped rather than loaded, so it may be any size
+      contents = source.map(dataPath);
+   }
+
+   /**
+    * Applies the deltas of the revisions newer than the given version, which
+    * must not be newer than the version last moved to.
+    * 
+    * @return the contents of the given version, valid until the next move
+    */
+   SegmentedBuffer moveTo(int version) throws IOException
+   {
+      while (index >= 0 && itemFile.getRevisionNumber(index) > version)
+      {
+         Action action = itemFile.getRevisionAction(index);
+         if (action == Action.BranchFile || action == Action.CreateBranch)
+         {
+            BranchRevisionRecord branchRev = (BranchRevisionRecord)itemFile.getRevisionAt(index);
+            physicalName = branchRev.getBranchFile();
+            itemFile = database.getItemFile(physicalName);
+            index = itemFile.getRevisionIndex(branchRev.getRevision()) - 1;
+         }
+         else
+         {
+            if (action == Action.EditFile)
+            {
+               DeltaRecord delta = itemFile.getPreviousDeltaAt(index);
+               if (delta != null)
+               {
+                  contents = apply(delta.getDelta());
+               }
+            }
+            --index;
+         }
+      }
+      return contents;
+   }
+
+   /**
+    * @return the physical name of the item file the walker has reached
+    */
+   String getPhysicalName()
+   {
+      return physicalName;
+   }
+
+   /**
+    * @return the index of the next revision of the item file to walk past
+    */
+   int getIndex()
+   {
+      return index;
+   }
+
+   private SegmentedBuffer apply(CompactDelta delta) throws IOException
+   {
+      ByteArrayOutputStream output = new ByteArrayOutputStream((int)delta.length());
+      delta.apply(contents, output);
+      return SegmentedBuffer.wrap(ByteBuffer.wrap(output.toByteArray()));
+   }
+}
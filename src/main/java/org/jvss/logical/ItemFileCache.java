@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.logical;
+
+import org.jvss.physical.ItemFile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of parsed item files, keyed by physical name and
+ * bounded by the total size of the cached files.
+ * <p>
+ * Files are weighed by their size on disk whether or not their records have
+ * been loaded yet, so the bound holds once they are. A file larger than the
+ * whole cache is returned but not kept. The cache is thread-safe; files are
+ * opened outside the lock, so two threads missing on the same file at once may
+ * both open it, and the first one stored wins.
+ */
+public class ItemFileCache
+{
+   private final VssDatabase database;
+
+   private final long maxBytes;
+
+   private final LinkedHashMap<String, ItemFile> files = new LinkedHashMap<String, ItemFile>(16, 0.75f, true);
+
+   private long bytes;
+
+   private long hits;
+
+   private long misses;
+
+   private long evictions;
+
+   /**
+    * @param maxBytes
+    *           the total size of the files to keep; 0 disables caching
+    */
+   public ItemFileCache(VssDatabase database, long maxBytes)
+   {
+      this.database = database;
+      this.maxBytes = maxBytes;
+   }
+
+   /**
+    * @return the item file with the given physical name, opening it in
+    *         header-only mode if it is not cached
+    */
+   public ItemFile get(String physicalName)
+   {
+      String key = physicalName.toUpperCase();
+      synchronized (this)
+      {
+         ItemFile itemFile = files.get(key);
+         if (itemFile != null)
+         {
+            ++hits;
+            return itemFile;
+         }
+         ++misses;
+      }
+
+      ItemFile itemFile =
+         new ItemFile(database.GetDataPath(key), database.getEncoding(), database.getCrcVerifier(),
+            database.getFileSource(), true);
+      long size = itemFile.getFileLength();
+      if (!accepts(itemFile))
+      {
+         return itemFile;
+      }
+
+      synchronized (this)
+      {
+         ItemFile existing = files.get(key);
+         if (existing != null)
+         {
+            return existing;
+         }
+         files.put(key, itemFile);
+         bytes += size;
+         Iterator<Map.Entry<String, ItemFile>> eldest = files.entrySet().iterator();
+         while (bytes > maxBytes)
+         {
+            bytes -= eldest.next().getValue().getFileLength();
+            eldest.remove();
+            ++evictions;
+         }
+      }
+      return itemFile;
+   }
+
+   /**
+    * @return whether the given file would be kept; files that are not should
+    *         be held by their user rather than reopened through the cache
+    */
+   public boolean accepts(ItemFile itemFile)
+   {
+      return itemFile.getFileLength() <= maxBytes;
+   }
+
+   /**
+    * Drops all cached files; the counters are kept.
+    */
+   public synchronized void clear()
+   {
+      files.clear();
+      bytes = 0;
+   }
+
+   /**
+    * @return the maxBytes
+    */
+   public long getMaxBytes()
+   {
+      return maxBytes;
+   }
+
+   /**
+    * @return the total size of the cached files
+    */
+   public synchronized long getBytes()
+   {
+      return bytes;
+   }
+
+   /**
+    * @return the number of cached files
+    */
+   public synchronized int getSize()
+   {
+      return files.size();
+   }
+
+   /**
+    * @return the hits
+    */
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the misses
+    */
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   /**
+    * @return the evictions
+    */
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format("%d files, %d bytes, %d hits, %d misses, %d evictions", files.size(), bytes, hits,
+         misses, evictions);
+   }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.logical;
+
+import org.jvss.physical.FileSource;
+import org.jvss.physical.PhysicalName;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * On-disk store of reconstructed revision contents, kept between runs so that
+ * a database migrated again does not rebuild unchanged files from their
+ * deltas.
+ * <p>
+ * Contents are stored once per distinct value, under their SHA-1 hash, as
+ * <code>objects/xx/yyyy...</code>. An index maps the physical name and version
+ * of a revision to its hash, together with a fingerprint of the files it was
+ * rebuilt from: the size and modification time of the item file and of the
+ * data file. A revision is taken from the store only if its fingerprint still
+ * matches; otherwise it is rebuilt and its index entry replaced. The index is
+ * an append-only file of fixed-size records in which the last record for a
+ * revision wins, and it is compacted when it is opened if most of its records
+ * are stale. Contents no longer referenced are not deleted. The store is
+ * thread-safe.
+ */
+public class RevisionStore
+{
+   private static final int MAGIC = 0x4A565253;
+
+   private static final int VERSION = 1;
+
+   private static final int HASH_LENGTH = 20;
+
+   private static final int HEADER_LENGTH = 8;
+
+   private static final int RECORD_LENGTH = 8 + 4 + 4 * 8 + HASH_LENGTH;
+
+   private final File directory;
+
+   private final File indexFile;
+
+   private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+   private DataOutputStream index;
+
+   private long hits;
+
+   private long misses;
+
+   private long stored;
+
+   /**
+    * Opens the store in the given directory, creating it if needed.
+    */
+   public RevisionStore(File directory) throws IOException
+   {
+      this.directory = directory;
+      this.indexFile = new File(directory, "index");
+      if (!directory.isDirectory() && !directory.mkdirs())
+      {
+         throw new IOException("Cannot create revision store " + directory);
+      }
+      int records = indexFile.exists() ? load() : 0;
+      // a record cut short would misalign the records appended after it
+      if (records == 0 || records > 2 * entries.size()
+         || indexFile.length() != HEADER_LENGTH + (long)records * RECORD_LENGTH)
+      {
+         rewrite();
+      }
+      index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+   }
+
+   /**
+    * @return the size and modification time of the item file and the data
+    *         file of the given item, which identify the revisions rebuilt from
+    *         them, or null if they cannot be read
+    */
+   public static long[] fingerprint(VssItem item)
+   {
+      FileSource source = item.getDatabase().getFileSource();
+      String itemPath = item.getPhysicalPath().toLowerCase();
+      String dataPath = item.getDataPath().toLowerCase();
+      try
+      {
+         return new long[]{source.length(itemPath), source.lastModified(itemPath), source.length(dataPath),
+            source.lastModified(dataPath)};
+      }
+      catch (IOException e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * @return the stored contents of the given revision, or null if they are
+    *         not stored or were rebuilt from files with another fingerprint
+    */
+   public File find(String physicalName, int version, long[] fingerprint)
+   {
+      Entry entry;
+      synchronized (this)
+      {
+         entry = entries.get(new Key(physicalName.toUpperCase(), version));
+      }
+      File file = entry != null && Arrays.equals(entry.fingerprint, fingerprint) ? object(entry.hash) : null;
+      if (file != null && !file.isFile())
+      {
+         file = null;
+      }
+      synchronized (this)
+      {
+         if (file != null)
+         {
+            ++hits;
+         }
+         else
+         {
+            ++misses;
+         }
+      }
+      return file;
+   }
+
+   /**
+    * Stores the contents read from the given stream, which is closed, as the
+    * given revision.
+    * 
+    * @return the file holding the contents
+    */
+   public File put(String physicalName, int version, long[] fingerprint, InputStream contents) throws IOException
+   {
+      MessageDigest digest = newDigest();
+      File temp = File.createTempFile("put", ".tmp", directory);
+      try
+      {
+         OutputStream out = new FileOutputStream(temp);
+         try
+         {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = contents.read(buffer, 0, buffer.length)) > 0)
+            {
+               digest.update(buffer, 0, n);
+               out.write(buffer, 0, n);
+            }
+         }
+         finally
+         {
+            out.close();
+            contents.close();
+         }
+         byte[] hash = digest.digest();
+         File file = object(hash);
+         if (!file.isFile())
+         {
+            file.getParentFile().mkdirs();
+            if (!temp.renameTo(file) && !file.isFile())
+            {
+               throw new IOException("Cannot store revision contents in " + file);
+            }
+         }
+
+         if (!PhysicalName.isValid(physicalName))
+         {
+            return file;
+         }
+         Key key = new Key(physicalName.toUpperCase(), version);
+         Entry entry = new Entry(fingerprint, hash);
+         synchronized (this)
+         {
+            entries.put(key, entry);
+            write(index, key, entry);
+            index.flush();
+            ++stored;
+         }
+         return file;
+      }
+      finally
+      {
+         temp.delete();
+      }
+   }
+
+   /**
+    * Closes the index; the store must not be used afterwards.
+    */
+   public synchronized void close() throws IOException
+   {
+      index.close();
+   }
+
+   /**
+    * @return the directory
+    */
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * @return the number of revisions in the index
+    */
+   public synchronized int getSize()
+   {
+      return entries.size();
+   }
+
+   /**
+    * @return the hits
+    */
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the misses
+    */
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   /**
+    * @return the number of revisions stored since the store was opened
+    */
+   public synchronized long getStored()
+   {
+      return stored;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format("%d revisions, %d hits, %d misses, %d stored", entries.size(), hits, misses, stored);
+   }
+
+   /**
+    * Reads the index, ignoring a record cut short by an interrupted run.
+    * 
+    * @return the number of records read
+    */
+   private int load() throws IOException
+   {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      int records = 0;
+      try
+      {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION)
+         {
+            return 0;
+         }
+         while (true)
+         {
+            long physicalKey = in.readLong();
+            int version = in.readInt();
+            long[] fingerprint = new long[4];
+            for (int i = 0; i < fingerprint.length; ++i)
+            {
+               fingerprint[i] = in.readLong();
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            in.readFully(hash);
+            entries.put(new Key(PhysicalName.decode(physicalKey), version), new Entry(fingerprint, hash));
+            ++records;
+         }
+      }
+      catch (EOFException e)
+      {
+         return records;
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /**
+    * Writes the live entries to a new index and replaces the old one.
+    */
+   private void rewrite() throws IOException
+   {
+      File temp = new File(directory, "index.tmp");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      try
+      {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         for (Map.Entry<Key, Entry> entry : entries.entrySet())
+         {
+            write(out, entry.getKey(), entry.getValue());
+         }
+      }
+      finally
+      {
+         out.close();
+      }
+      if (indexFile.exists() && !indexFile.delete() || !temp.renameTo(indexFile))
+      {
+         throw new IOException("Cannot replace revision store index " + indexFile);
+      }
+   }
+
+   private static void write(DataOutputStream out, Key key, Entry entry) throws IOException
+   {
+      out.writeLong(PhysicalName.encode(key.physicalName));
+      out.writeInt(key.version);
+      for (long value : entry.fingerprint)
+      {
+         out.writeLong(value);
+      }
+      out.write(entry.hash);
+   }
+
+   private File object(byte[] hash)
+   {
+      StringBuilder name = new StringBuilder(HASH_LENGTH * 2);
+      for (byte b : hash)
+      {
+         name.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return new File(new File(new File(directory, "objects"), name.substring(0, 2)), name.substring(2));
+   }
+
+   private static MessageDigest newDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   private static class Key
+   {
+      final String physicalName;
+
+      final int version;
+
+      Key(String physicalName, int version)
+      {
+         this.physicalName = physicalName;
+         this.version = version;
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof Key))
+         {
+            return false;
+         }
+         Key other = (Key)obj;
+         return version == other.version && physicalName.equals(other.physicalName);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return physicalName.hashCode() * 31 + version;
+      }
+   }
+
+   private static class Entry
+   {
+      final long[] fingerprint;
+
+      final byte[] hash;
+
+      Entry(long[] fingerprint, byte[] hash)
+      {
+         this.fingerprint = fingerprint;
+         this.hash = hash;
+      }
+   }
+}
@@ -15,8 +15,10 @@
  */
 package org.jvss.logical;
 
+import org.jvss.physical.FileSource;
+import org.jvss.physical.LocalFileSource;
+
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
@@ -32,15 +34,28 @@ public class SimpleIniReader
 {
    private final String filename;
 
+   private final FileSource source;
+
    private final Map<String, String> entries = new HashMap<String, String>();
 
    /**
     * @param filename
     */
    public SimpleIniReader(String filename)
+   {
+      this(filename, LocalFileSource.INSTANCE);
+   }
+
+   /**
+    * @param filename
+    * @param source
+    *           the source the file is read from
+    */
+   public SimpleIniReader(String filename, FileSource source)
    {
       super();
       this.filename = filename;
+      this.source = source;
    }
 
    public void parse() throws IOException
@@ -49,7 +64,7 @@ public class SimpleIniReader
       BufferedReader in = null;
       try
       {
-         in = new BufferedReader(new InputStreamReader(new FileInputStream(filename), "Cp1251"));
+         in = new BufferedReader(new InputStreamReader(source.open(filename), "Cp1251"));
          String strLine;
 
          while ((strLine = in.readLine()) != null)
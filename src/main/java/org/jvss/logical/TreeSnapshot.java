@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.logical;
+
+import org.jvss.hash.LongHashMap;
+import org.jvss.physical.FileSource;
+import org.jvss.physical.ItemHeaderRecord.ItemType;
+import org.jvss.physical.PhysicalName;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Persisted copy of the project tree of a database, so that a later run can
+ * list projects without reading their entry files and resolving their names.
+ * <p>
+ * For each project the snapshot keeps its entries (logical name, physical name
+ * and item type) together with the size and modification time of the project
+ * item file and entry file they were read from. A project is taken from the
+ * snapshot only if both files are unchanged, which costs two lookups of file
+ * attributes; otherwise its entries are read again and replace the stored
+ * ones. The whole snapshot is discarded if it was written for another
+ * database or if <code>names.dat</code> has changed, since any logical name
+ * may then differ. Parents are not stored: a project is reached through the
+ * entries of its parent, as when the tree is read from the database.
+ * <p>
+ * The snapshot is a local file, whatever source the database is read from,
+ * and is written by {@link VssDatabase#close()} if anything was read again.
+ * It is thread-safe.
+ */
+public class TreeSnapshot
+{
+   private static final int MAGIC = 0x4A565453;
+
+   private static final int VERSION = 1;
+
+   /**
+    * Entries of one project, with the attributes of the files they were read
+    * from: item file size and time, then entry file size and time.
+    */
+   static class Project
+   {
+      final String dataExt;
+
+      final long[] stamp;
+
+      final String[] logicalNames;
+
+      final String[] physicalNames;
+
+      final ItemType[] itemTypes;
+
+      final int count;
+
+      Project(String dataExt, long[] stamp, String[] logicalNames, String[] physicalNames, ItemType[] itemTypes,
+         int count)
+      {
+         this.dataExt = dataExt;
+         this.stamp = stamp;
+         this.logicalNames = logicalNames;
+         this.physicalNames = physicalNames;
+         this.itemTypes = itemTypes;
+         this.count = count;
+      }
+   }
+
+   private final VssDatabase database;
+
+   private final File file;
+
+   private final LongHashMap<Project> projects = new LongHashMap<Project>();
+
+   private boolean modified;
+
+   private long hits;
+
+   private long misses;
+
+   /**
+    * Loads the snapshot from the given file if it exists and matches the
+    * database; a missing, stale or unreadable file gives an empty snapshot.
+    */
+   public TreeSnapshot(VssDatabase database, File file)
+   {
+      this.database = database;
+      this.file = file;
+      if (file.exists())
+      {
+         try
+         {
+            load();
+         }
+         catch (IOException e)
+         {
+            // rebuilt from the database and written again on close
+            projects.clear();
+         }
+      }
+   }
+
+   /**
+    * @return the entries of the given project, or null if the snapshot does
+    *         not hold them or its files have changed since
+    */
+   Project get(VssProject project)
+   {
+      long key = PhysicalName.encode(project.getPhysicalName());
+      Project stored;
+      synchronized (this)
+      {
+         stored = projects.get(key);
+      }
+      if (stored != null && Arrays.equals(stored.stamp, stamp(project, stored.dataExt)))
+      {
+         synchronized (this)
+         {
+            ++hits;
+         }
+         return stored;
+      }
+      synchronized (this)
+      {
+         ++misses;
+      }
+      return null;
+   }
+
+   /**
+    * Records the entries of the given project.
+    * 
+    * @param stamp
+    *           the file attributes returned by
+    *           {@link #stamp(VssProject, String)} before the entries were
+    *           read, or null if they could not be read, in which case nothing
+    *           is recorded
+    */
+   void put(VssProject project, String dataExt, long[] stamp, String[] logicalNames, String[] physicalNames,
+      ItemType[] itemTypes, int count)
+   {
+      if (stamp == null || !PhysicalName.isValid(project.getPhysicalName()))
+      {
+         return;
+      }
+      for (int i = 0; i < count; ++i)
+      {
+         if (!PhysicalName.isValid(physicalNames[i]))
+         {
+            return;
+         }
+      }
+      Project entries = new Project(dataExt, stamp, logicalNames, physicalNames, itemTypes, count);
+      synchronized (this)
+      {
+         projects.put(PhysicalName.encode(project.getPhysicalName()), entries);
+         modified = true;
+      }
+   }
+
+   /**
+    * @param dataExt
+    *           the extension of the entry file, which is kept in the snapshot
+    *           so that checking it does not open the item file
+    * @return the size and modification time of the item file and the entry
+    *         file of the given project, or null if they cannot be read
+    */
+   long[] stamp(VssProject project, String dataExt)
+   {
+      FileSource source = database.getFileSource();
+      String itemPath = project.getPhysicalPath().toLowerCase();
+      String dataPath = (project.getPhysicalPath() + dataExt).toLowerCase();
+      try
+      {
+         return new long[]{source.length(itemPath), source.lastModified(itemPath), source.length(dataPath),
+            source.lastModified(dataPath)};
+      }
+      catch (IOException e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Writes the snapshot if any project was read from the database since it
+    * was loaded. The file is replaced only once it has been written in full.
+    */
+   public synchronized void save() throws IOException
+   {
+      if (!modified)
+      {
+         return;
+      }
+      File temp = new File(file.getPath() + ".tmp");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      try
+      {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeUTF(database.getDataPath());
+         long[] names = namesStamp();
+         out.writeLong(names[0]);
+         out.writeLong(names[1]);
+         long[] keys = projects.keys();
+         out.writeInt(keys.length);
+         for (long key : keys)
+         {
+            Project project = projects.get(key);
+            out.writeLong(key);
+            out.writeUTF(project.dataExt);
+            for (long value : project.stamp)
+            {
+               out.writeLong(value);
+            }
+            out.writeInt(project.count);
+            for (int i = 0; i < project.count; ++i)
+            {
+               out.writeLong(PhysicalName.encode(project.physicalNames[i]));
+               out.writeByte(project.itemTypes[i].getValue());
+               out.writeUTF(project.logicalNames[i]);
+            }
+         }
+      }
+      finally
+      {
+         out.close();
+      }
+      if (file.exists() && !file.delete() || !temp.renameTo(file))
+      {
+         throw new IOException("Cannot replace tree snapshot " + file);
+      }
+      modified = false;
+   }
+
+   /**
+    * @return the file the snapshot is kept in
+    */
+   public File getFile()
+   {
+      return file;
+   }
+
+   /**
+    * @return the number of projects in the snapshot
+    */
+   public synchronized int getSize()
+   {
+      return projects.size();
+   }
+
+   /**
+    * @return the number of projects taken from the snapshot
+    */
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the number of projects read from the database instead
+    */
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format("%d projects, %d hits, %d misses", projects.size(), hits, misses);
+   }
+
+   private void load() throws IOException
+   {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try
+      {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(database.getDataPath()))
+         {
+            return;
+         }
+         long[] names = namesStamp();
+         if (in.readLong() != names[0] | in.readLong() != names[1])
+         {
+            return;
+         }
+         int projectCount = in.readInt();
+         for (int p = 0; p < projectCount; ++p)
+         {
+            long key = in.readLong();
+            String dataExt = in.readUTF();
+            long[] stamp = new long[4];
+            for (int i = 0; i < stamp.length; ++i)
+            {
+               stamp[i] = in.readLong();
+            }
+            int count = in.readInt();
+            String[] logicalNames = new String[count];
+            String[] physicalNames = new String[count];
+            ItemType[] itemTypes = new ItemType[count];
+            for (int i = 0; i < count; ++i)
+            {
+               physicalNames[i] = PhysicalName.decode(in.readLong());
+               itemTypes[i] = ItemType.valueOf(in.readByte());
+               logicalNames[i] = in.readUTF();
+            }
+            projects.put(key, new Project(dataExt, stamp, logicalNames, physicalNames, itemTypes, count));
+         }
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new IOException("Invalid tree snapshot " + file);
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   private long[] namesStamp() throws IOException
+   {
+      FileSource source = database.getFileSource();
+      String namesPath = new File(database.getDataPath(), "names.dat").getAbsolutePath();
+      return new long[]{source.length(namesPath), source.lastModified(namesPath)};
+   }
+}
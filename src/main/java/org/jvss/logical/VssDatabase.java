@@ -15,19 +15,42 @@
  */
 package org.jvss.logical;
 
+import org.jvss.physical.CrcVerifier;
+import org.jvss.physical.ArchiveFileSource;
+import org.jvss.physical.FileSource;
+import org.jvss.physical.IoScheduler;
+import org.jvss.physical.IoScheduler.Lane;
 import org.jvss.physical.ItemFile;
 import org.jvss.physical.ItemHeaderRecord.ItemType;
+import org.jvss.physical.LocalFileSource;
 import org.jvss.physical.NameFile;
+import org.jvss.physical.NameIndex;
 import org.jvss.physical.NameRecord;
 import org.jvss.physical.NameRecord.NameKind;
+import org.jvss.physical.PrefetchingFileSource;
 import org.jvss.physical.ProjectHeaderRecord;
+import org.jvss.physical.RecordCrcException;
+import org.jvss.physical.RecordException;
+import org.jvss.physical.ThrottledFileSource;
 import org.jvss.physical.VssName;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Represents a VSS database and provides access to the items it contains.
+ * <p>
+ * A database may be read from several threads at once. The database files are
+ * never modified and all shared state (item files, name index, project entries)
+ * is either immutable or initialized once under a lock, so {@link #GetItem},
+ * {@link #GetItemPhysical}, {@link #GetFullName}, item revision lookups and
+ * {@link VssFileRevision#getContents()} are thread-safe. Iterators returned by
+ * items must each be used from a single thread. Code using the physical
+ * record files directly must keep the sequential read methods
+ * ({@link org.jvss.physical.VssRecordFile#ReadNextRecord} and similar) on one
+ * thread, or use offset-based reads and cursors instead.
  */
 public class VssDatabase
 {
@@ -47,10 +70,37 @@ public class VssDatabase
 
    private final NameFile nameFile;
 
+   private final NameIndex nameIndex;
+
    private final VssProject rootProject;
 
    private final String encoding;
 
+   private final CrcVerifier crcVerifier;
+
+   private final ItemFileCache itemFiles;
+
+   private final CommentCache comments;
+
+   private final ContentCache contents;
+
+   private final RevisionStore revisionStore;
+
+   private final CheckpointIndex checkpoints;
+
+   private final FileSource fileSource;
+
+   private final FileSource contentSource;
+
+   private final PrefetchingFileSource prefetcher;
+
+   /**
+    * The archive opened by the database itself, closed by {@link #close()}.
+    */
+   private final ArchiveFileSource<?> archive;
+
+   private final TreeSnapshot treeSnapshot;
+
    /**
     * @return the basePath
     */
@@ -99,16 +149,165 @@ public class VssDatabase
       return encoding;
    }
 
+   /**
+    * @return the verifier deciding when record CRCs are checked
+    */
+   public CrcVerifier getCrcVerifier()
+   {
+      return crcVerifier;
+   }
+
+   /**
+    * @return the source the database files are read from
+    */
+   public FileSource getFileSource()
+   {
+      return fileSource;
+   }
+
+   /**
+    * @return the source revision contents are read from: the same files as
+    *         {@link #getFileSource()}, paced in the content lane of the I/O
+    *         scheduler if there is one
+    */
+   public FileSource getContentSource()
+   {
+      return contentSource;
+   }
+
+   /**
+    * @return the prefetcher reading item files ahead of a tree walk, or null
+    *         if prefetching is disabled
+    */
+   public PrefetchingFileSource getPrefetcher()
+   {
+      return prefetcher;
+   }
+
+   /**
+    * Starts reading the item files of the given project entries in the
+    * background, followed by the entry files of the subprojects among them, so
+    * that a walk into them finds the bytes in memory. File contents are not
+    * prefetched; they are read much later, if at all.
+    */
+   void prefetchEntries(final String[] physicalNames, final ItemType[] itemTypes, final int count)
+   {
+      if (prefetcher == null || count == 0)
+      {
+         return;
+      }
+      for (int i = 0; i < count; ++i)
+      {
+         prefetcher.prefetch(GetDataPath(physicalNames[i]).toLowerCase());
+      }
+      prefetcher.plan(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            for (int i = 0; i < count; ++i)
+            {
+               if (itemTypes[i] == ItemType.PROJECT)
+               {
+                  try
+                  {
+                     ItemFile itemFile = getItemFile(physicalNames[i]);
+                     String dataExt = itemFile.getHeader().getDataExt();
+                     prefetcher.prefetch((GetDataPath(physicalNames[i]) + dataExt).toLowerCase());
+                  }
+                  catch (RecordException e)
+                  {
+                     // reported to the walker when it opens the project
+                  }
+               }
+            }
+         }
+      });
+   }
+
+   /**
+    * @return the persisted project tree consulted before reading project
+    *         entries, or null if none is used
+    */
+   public TreeSnapshot getTreeSnapshot()
+   {
+      return treeSnapshot;
+   }
+
+   /**
+    * @return the cache of parsed item files
+    */
+   public ItemFileCache getItemFileCache()
+   {
+      return itemFiles;
+   }
+
+   /**
+    * @return the parsed item file with the given physical name, shared through
+    *         the item file cache
+    */
+   public ItemFile getItemFile(String physicalName)
+   {
+      return itemFiles.get(physicalName);
+   }
+
+   /**
+    * @return the cache of revision comments
+    */
+   public CommentCache getCommentCache()
+   {
+      return comments;
+   }
+
+   /**
+    * @return the cache of reconstructed revision contents
+    */
+   public ContentCache getContentCache()
+   {
+      return contents;
+   }
+
+   /**
+    * @return the persistent store of revision contents, or null if none is
+    *         used
+    */
+   public RevisionStore getRevisionStore()
+   {
+      return revisionStore;
+   }
+
+   /**
+    * @return the checkpoints of files with long histories, or null if none
+    *         are taken
+    */
+   public CheckpointIndex getCheckpointIndex()
+   {
+      return checkpoints;
+   }
+
+   /**
+    * @return the text of the comment record at the given offset of the item
+    *         file of the given item, shared through the comment cache
+    */
+   public String getComment(VssItem item, int offset)
+   {
+      return comments.get(item, offset);
+   }
+
    public VssItem GetItem(String logicalPath)
    {
       //       var segments = logicalPath.Split(new char[] { ProjectSeparatorChar },
       //           StringSplitOptions.RemoveEmptyEntries);
       String[] segments = logicalPath.split(ProjectSeparatorChar);
-      int index = segments[0] == RootProjectName ? 1 : 0;
+      int index = segments.length > 0 && segments[0].equals(RootProjectName) ? 1 : 0;
       VssProject project = rootProject;
       while (index < segments.length)
       {
          String name = segments[index++];
+         if (name.length() == 0)
+         {
+            continue;
+         }
 
          VssProject subproject = project.findProject(name);
          if (subproject != null)
@@ -141,13 +340,13 @@ public class VssDatabase
    {
       physicalName = physicalName.toUpperCase();
 
-      if (physicalName == RootProjectFile)
+      if (physicalName.equalsIgnoreCase(RootProjectFile))
       {
          return rootProject;
       }
 
       String physicalPath = GetDataPath(physicalName);
-      ItemFile itemFile = new ItemFile(physicalPath, encoding);
+      ItemFile itemFile = itemFiles.get(physicalName);
       boolean isProject = itemFile.getHeader().getItemType() == ItemType.PROJECT;
       String logicalName = GetFullName(itemFile.getHeader().getName());
       VssItemName itemName = new VssItemName(logicalName, physicalName, isProject);
@@ -163,29 +362,153 @@ public class VssDatabase
       {
          item = new VssFile(this, itemName, physicalPath);
       }
-      item.setItemFile(itemFile);
       return item;
    }
 
    public boolean ItemExists(String physicalName)
    {
       String physicalPath = GetDataPath(physicalName);
-      return new File(physicalPath.toLowerCase()).exists();
+      return fileSource.exists(physicalPath.toLowerCase());
    }
 
+   /**
+    * Writes the tree snapshot if it has changed, closes the revision store,
+    * deletes spilled checkpoints, stops the background threads of the
+    * database and closes the archive it was opened from, if any. Items of the
+    * database must not be used afterwards.
+    * 
+    * @throws RecordCrcException
+    *            the first CRC error found by deferred verification and not
+    *            yet collected through {@link CrcVerifier#await()}, once the
+    *            database is closed
+    */
+   public void close() throws IOException
+   {
+      List<RecordCrcException> crcErrors;
+      try
+      {
+         crcErrors = crcVerifier.await();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         crcErrors = Collections.emptyList();
+      }
+      if (treeSnapshot != null)
+      {
+         treeSnapshot.save();
+      }
+      if (revisionStore != null)
+      {
+         revisionStore.close();
+      }
+      if (checkpoints != null)
+      {
+         checkpoints.close();
+      }
+      if (prefetcher != null)
+      {
+         prefetcher.shutdown();
+      }
+      crcVerifier.shutdown();
+      if (archive != null)
+      {
+         archive.close();
+      }
+      if (!crcErrors.isEmpty())
+      {
+         throw crcErrors.get(0);
+      }
+   }
+
+   /**
+    * Default bound on the total size of cached item files.
+    */
+   public static final long DEFAULT_ITEM_FILE_CACHE_SIZE = 64L * 1024 * 1024;
+
+   /**
+    * Default bound on the total length of cached comments.
+    */
+   public static final long DEFAULT_COMMENT_CACHE_SIZE = 1024 * 1024;
+
+   /**
+    * Default bound on the total size of cached revision contents.
+    */
+   public static final long DEFAULT_CONTENT_CACHE_SIZE = 32L * 1024 * 1024;
+
+   /**
+    * Default bound on the total size of checkpoints kept in memory.
+    */
+   public static final long DEFAULT_CHECKPOINT_MEMORY = 64L * 1024 * 1024;
+
    public VssDatabase(String path, String encoding) throws IOException
    {
+      this(new VssDatabaseFactory(path, encoding));
+   }
+
+   /**
+    * Opens the database with the settings of the given factory.
+    */
+   VssDatabase(VssDatabaseFactory settings) throws IOException
+   {
+      String path = settings.getPath();
       this.basePath = path;
-      this.encoding = encoding;
+      this.encoding = settings.getEncoding();
+      this.crcVerifier = new CrcVerifier(settings.getCrcMode());
+      this.itemFiles = new ItemFileCache(this, settings.getItemFileCacheSize());
+      this.comments = new CommentCache(settings.getCommentCacheSize());
+      this.contents = new ContentCache(settings.getContentCacheSize(), settings.isContentCacheDirect());
+      File storeDir = settings.getRevisionStoreDir();
+      this.revisionStore = storeDir != null ? new RevisionStore(storeDir) : null;
+      int interval = settings.getCheckpointInterval();
+      this.checkpoints =
+         interval > 0 ? new CheckpointIndex(interval, settings.getCheckpointMemory(), settings
+            .getCheckpointSpillDir()) : null;
+      FileSource source = settings.getFileSource();
+      if (source == null && ArchiveFileSource.isArchive(new File(path)))
+      {
+         source = archive = ArchiveFileSource.open(new File(path));
+      }
+      else
+      {
+         archive = null;
+         if (source == null)
+         {
+            source = LocalFileSource.INSTANCE;
+         }
+      }
+      IoScheduler scheduler = settings.getIoScheduler();
+      FileSource content = null;
+      if (scheduler != null)
+      {
+         content = new ThrottledFileSource(source, scheduler, Lane.Content);
+         // below the prefetcher, so that reads ahead are paced too
+         source = new ThrottledFileSource(source, scheduler, Lane.Metadata);
+      }
+      if (settings.getPrefetchSize() > 0)
+      {
+         prefetcher = new PrefetchingFileSource(source, settings.getPrefetchThreads(), settings.getPrefetchSize());
+         fileSource = prefetcher;
+      }
+      else
+      {
+         prefetcher = null;
+         fileSource = source;
+      }
+      contentSource = content != null ? content : fileSource;
 
       iniPath = new File(path, "srcsafe.ini").getAbsolutePath();
-      SimpleIniReader iniReader = new SimpleIniReader(iniPath);
+      SimpleIniReader iniReader = new SimpleIniReader(iniPath, fileSource);
       iniReader.parse();
 
       dataPath = new File(path, iniReader.getValue("Data_Path", "data")).getAbsolutePath();
 
       String namesPath = new File(dataPath, "names.dat").getAbsolutePath();
-      nameFile = new NameFile(namesPath, encoding);
+      nameFile = new NameFile(namesPath, encoding, crcVerifier, fileSource);
+      nameIndex = nameFile.getIndex();
+
+      File snapshotFile = settings.getTreeSnapshotFile();
+      treeSnapshot = snapshotFile != null ? new TreeSnapshot(this, snapshotFile) : null;
 
       rootProject = OpenProject(null, RootProjectFile, RootProjectName);
    }
@@ -220,11 +543,19 @@ public class VssDatabase
    {
       if (name.nameFileOffset() != 0)
       {
+         int slot = nameIndex.find(name.nameFileOffset());
+         if (slot >= 0)
+         {
+            String fullName = nameIndex.getName(slot, name.isProject());
+            return fullName != null ? fullName : name.shortName();
+         }
+
+         // not the start of a name record; let the name file report it
          NameRecord nameRecord = nameFile.GetName(name.nameFileOffset());
-         int nameIndex = nameRecord.indexOf(name.isProject() ? NameKind.Project : NameKind.Long);
-         if (nameIndex >= 0)
+         int kindIndex = nameRecord.indexOf(name.isProject() ? NameKind.Project : NameKind.Long);
+         if (kindIndex >= 0)
          {
-            return nameRecord.getName(nameIndex);
+            return nameRecord.getName(kindIndex);
          }
       }
       return name.shortName();
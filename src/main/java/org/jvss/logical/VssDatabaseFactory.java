@@ -15,6 +15,11 @@
  */
 package org.jvss.logical;
 
+import org.jvss.physical.CrcVerifier;
+import org.jvss.physical.FileSource;
+import org.jvss.physical.IoScheduler;
+
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 
@@ -27,6 +32,34 @@ public class VssDatabaseFactory
 
    private String encoding = Charset.defaultCharset().name();
 
+   private CrcVerifier.Mode crcMode = CrcVerifier.Mode.Always;
+
+   private long itemFileCacheSize = VssDatabase.DEFAULT_ITEM_FILE_CACHE_SIZE;
+
+   private long commentCacheSize = VssDatabase.DEFAULT_COMMENT_CACHE_SIZE;
+
+   private long contentCacheSize = VssDatabase.DEFAULT_CONTENT_CACHE_SIZE;
+
+   private boolean contentCacheDirect;
+
+   private FileSource fileSource;
+
+   private long prefetchSize;
+
+   private int prefetchThreads = 4;
+
+   private File treeSnapshotFile;
+
+   private File revisionStoreDir;
+
+   private int checkpointInterval;
+
+   private long checkpointMemory = VssDatabase.DEFAULT_CHECKPOINT_MEMORY;
+
+   private File checkpointSpillDir;
+
+   private IoScheduler ioScheduler;
+
    /**
     * @param encoding
     *           the encoding to set
@@ -36,6 +69,263 @@ public class VssDatabaseFactory
       this.encoding = encoding;
    }
 
+   /**
+    * @param crcMode
+    *           when record CRCs are verified; defaults to checking every
+    *           record as it is read
+    */
+   public void setCrcMode(CrcVerifier.Mode crcMode)
+   {
+      this.crcMode = crcMode;
+   }
+
+   /**
+    * @return the crcMode
+    */
+   public CrcVerifier.Mode getCrcMode()
+   {
+      return crcMode;
+   }
+
+   /**
+    * @param itemFileCacheSize
+    *           bound on the total size of item files kept parsed in memory, in
+    *           bytes; 0 disables the cache
+    */
+   public void setItemFileCacheSize(long itemFileCacheSize)
+   {
+      this.itemFileCacheSize = itemFileCacheSize;
+   }
+
+   /**
+    * @return the itemFileCacheSize
+    */
+   public long getItemFileCacheSize()
+   {
+      return itemFileCacheSize;
+   }
+
+   /**
+    * @param commentCacheSize
+    *           bound on the total length of revision comments kept in memory,
+    *           in characters; 0 disables the cache
+    */
+   public void setCommentCacheSize(long commentCacheSize)
+   {
+      this.commentCacheSize = commentCacheSize;
+   }
+
+   /**
+    * @return the commentCacheSize
+    */
+   public long getCommentCacheSize()
+   {
+      return commentCacheSize;
+   }
+
+   /**
+    * @param contentCacheSize
+    *           bound on the total size of reconstructed revision contents kept
+    *           in memory, in bytes; 0 disables the cache
+    */
+   public void setContentCacheSize(long contentCacheSize)
+   {
+      this.contentCacheSize = contentCacheSize;
+   }
+
+   /**
+    * @return the contentCacheSize
+    */
+   public long getContentCacheSize()
+   {
+      return contentCacheSize;
+   }
+
+   /**
+    * @param contentCacheDirect
+    *           whether cached revision contents are kept in direct buffers,
+    *           outside the Java heap
+    */
+   public void setContentCacheDirect(boolean contentCacheDirect)
+   {
+      this.contentCacheDirect = contentCacheDirect;
+   }
+
+   /**
+    * @return the contentCacheDirect
+    */
+   public boolean isContentCacheDirect()
+   {
+      return contentCacheDirect;
+   }
+
+   /**
+    * @param fileSource
+    *           where the database files are read from; by default the
+    *           archive named by the path if it is a <code>.zip</code> or
+    *           <code>.tar</code> file, and the local file system otherwise
+    */
+   public void setFileSource(FileSource fileSource)
+   {
+      this.fileSource = fileSource;
+   }
+
+   /**
+    * @return the fileSource, or null if it is chosen from the path
+    */
+   public FileSource getFileSource()
+   {
+      return fileSource;
+   }
+
+   /**
+    * @param prefetchSize
+    *           bound on the total size of item files read ahead while walking
+    *           projects, in bytes; 0, the default, disables prefetching
+    */
+   public void setPrefetchSize(long prefetchSize)
+   {
+      this.prefetchSize = prefetchSize;
+   }
+
+   /**
+    * @return the prefetchSize
+    */
+   public long getPrefetchSize()
+   {
+      return prefetchSize;
+   }
+
+   /**
+    * @param prefetchThreads
+    *           the number of concurrent background reads when prefetching
+    */
+   public void setPrefetchThreads(int prefetchThreads)
+   {
+      this.prefetchThreads = prefetchThreads;
+   }
+
+   /**
+    * @return the prefetchThreads
+    */
+   public int getPrefetchThreads()
+   {
+      return prefetchThreads;
+   }
+
+   /**
+    * @param ioScheduler
+    *           paces all reads of the database files, for databases on shares
+    *           that are in use; null, the default, reads at full speed
+    */
+   public void setIoScheduler(IoScheduler ioScheduler)
+   {
+      this.ioScheduler = ioScheduler;
+   }
+
+   /**
+    * @return the ioScheduler
+    */
+   public IoScheduler getIoScheduler()
+   {
+      return ioScheduler;
+   }
+
+   /**
+    * @param treeSnapshotFile
+    *           local file the project tree is persisted in between runs, so
+    *           that unchanged projects are listed without reading their
+    *           entries; null, the default, reads every project
+    */
+   public void setTreeSnapshotFile(File treeSnapshotFile)
+   {
+      this.treeSnapshotFile = treeSnapshotFile;
+   }
+
+   /**
+    * @return the treeSnapshotFile
+    */
+   public File getTreeSnapshotFile()
+   {
+      return treeSnapshotFile;
+   }
+
+   /**
+    * @param revisionStoreDir
+    *           local directory reconstructed revision contents are kept in
+    *           between runs, so that revisions of unchanged files are not
+    *           rebuilt; null, the default, rebuilds every revision
+    */
+   public void setRevisionStoreDir(File revisionStoreDir)
+   {
+      this.revisionStoreDir = revisionStoreDir;
+   }
+
+   /**
+    * @return the revisionStoreDir
+    */
+   public File getRevisionStoreDir()
+   {
+      return revisionStoreDir;
+   }
+
+   /**
+    * @param checkpointInterval
+    *           number of versions between the full revision contents kept for
+    *           files with longer histories, so that no revision merges more
+    *           deltas than that; 0, the default, takes no checkpoints
+    */
+   public void setCheckpointInterval(int checkpointInterval)
+   {
+      this.checkpointInterval = checkpointInterval;
+   }
+
+   /**
+    * @return the checkpointInterval
+    */
+   public int getCheckpointInterval()
+   {
+      return checkpointInterval;
+   }
+
+   /**
+    * @param checkpointMemory
+    *           bound on the total size of checkpoints kept in memory, in
+    *           bytes; the interval of a file whose checkpoints would not fit is
+    *           widened unless they can be spilled
+    */
+   public void setCheckpointMemory(long checkpointMemory)
+   {
+      this.checkpointMemory = checkpointMemory;
+   }
+
+   /**
+    * @return the checkpointMemory
+    */
+   public long getCheckpointMemory()
+   {
+      return checkpointMemory;
+   }
+
+   /**
+    * @param checkpointSpillDir
+    *           local directory checkpoints too large for memory are written
+    *           to for the life of the database; null, the default, widens
+    *           their interval instead
+    */
+   public void setCheckpointSpillDir(File checkpointSpillDir)
+   {
+      this.checkpointSpillDir = checkpointSpillDir;
+   }
+
+   /**
+    * @return the checkpointSpillDir
+    */
+   public File getCheckpointSpillDir()
+   {
+      return checkpointSpillDir;
+   }
+
    /**
     * @return the path
     */
@@ -57,8 +347,14 @@ public class VssDatabaseFactory
       this.path = path;
    }
 
+   public VssDatabaseFactory(String path, String encoding)
+   {
+      this.path = path;
+      this.encoding = encoding;
+   }
+
    public VssDatabase Open() throws IOException
    {
-      return new VssDatabase(path, encoding);
+      return new VssDatabase(this);
    }
 }
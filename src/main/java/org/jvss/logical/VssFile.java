@@ -15,18 +15,33 @@
  */
 package org.jvss.logical;
 
-import org.jvss.physical.CommentRecord;
 import org.jvss.physical.FileHeaderRecord;
 import org.jvss.physical.FileHeaderRecord.FileFlags;
-import org.jvss.physical.RevisionRecord;
+import org.jvss.physical.RevisionView;
+import org.jvss.physical.SegmentedBuffer;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Date;
+import java.util.LinkedList;
 
 /**
  * Represents a VSS file.
  */
 public class VssFile extends VssItem
 {
+   /**
+    * Receives the contents of the revisions of a file.
+    */
+   public static interface ContentsHandler
+   {
+      /**
+       * @param contents
+       *           the contents of the revision, valid during the call only
+       */
+      void revision(VssFileRevision revision, InputStream contents) throws IOException;
+   }
+
    public boolean isLocked()
    {
       return (header().getFlags().getValue() & FileFlags.Locked.getValue()) != 0;
@@ -82,6 +97,60 @@ public class VssFile extends VssItem
       return (VssFileRevision)super.GetRevision(version);
    }
 
+   /**
+    * Reconstructs every revision of the file, newest first, in one walk back
+    * along the delta chain. Each revision is built from the next newer one by
+    * applying a single delta, so the history costs one read of the data file
+    * and one delta per revision, where calling
+    * {@link VssFileRevision#getContents()} for each revision merges all the
+    * newer deltas again. One revision is held in memory at a time.
+    */
+   public void readHistory(ContentsHandler handler) throws IOException
+   {
+      ContentsWalker walker = new ContentsWalker(this);
+      for (int version = getRevisionCount(); version >= 1; --version)
+      {
+         handler.revision(getRevision(version), walker.moveTo(version).open());
+      }
+   }
+
+   /**
+    * Reconstructs every revision of the file, oldest first. Revisions are
+    * built newest first, as by {@link #readHistory}, and the oldest ones not
+    * yet handed out are kept in a buffer of the given size and handed out in
+    * reverse. A history that fits takes one walk; one k times the size of the
+    * buffer takes k walks. A revision larger than the buffer is handed out on
+    * its own.
+    * 
+    * @param maxBufferBytes
+    *           bound on the total size of the revisions kept for reversal
+    */
+   public void readHistoryOldestFirst(ContentsHandler handler, long maxBufferBytes) throws IOException
+   {
+      int newest = getRevisionCount();
+      int oldest = 1;
+      while (oldest <= newest)
+      {
+         ContentsWalker walker = new ContentsWalker(this);
+         LinkedList<SegmentedBuffer> window = new LinkedList<SegmentedBuffer>();
+         long bytes = 0;
+         for (int version = newest; version >= oldest; --version)
+         {
+            SegmentedBuffer contents = walker.moveTo(version);
+            window.addFirst(contents);
+            bytes += contents.size();
+            while (bytes > maxBufferBytes && window.size() > 1)
+            {
+               bytes -= window.removeLast().size();
+            }
+         }
+         for (SegmentedBuffer contents : window)
+         {
+            handler.revision(getRevision(oldest++), contents.open());
+         }
+      }
+   }
+
    private FileHeaderRecord header()
    {
       return (FileHeaderRecord)getItemFile().getHeader();
@@ -99,12 +168,11 @@ public class VssFile extends VssItem
    }
 
    /**
-    * @see org.jvss.logical.VssItem#createRevision(org.jvss.physical.RevisionRecord,
-    *      org.jvss.physical.CommentRecord)
+    * @see org.jvss.logical.VssItem#createRevision(org.jvss.physical.RevisionView)
     */
    @Override
-   protected VssRevision createRevision(RevisionRecord revision, CommentRecord comment)
+   protected VssRevision createRevision(RevisionView revision)
    {
-      return new VssFileRevision(this, revision, comment);
+      return new VssFileRevision(this, revision);
    }
 }
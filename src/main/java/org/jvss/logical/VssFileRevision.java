@@ -15,22 +15,22 @@
  */
 package org.jvss.logical;
 
-import org.jvss.physical.CommentRecord;
-import org.jvss.physical.DeltaOperation;
+import org.jvss.logical.CheckpointIndex.Checkpoint;
+import org.jvss.physical.CompactDelta;
 import org.jvss.physical.DeltaRecord;
 import org.jvss.physical.DeltaStream;
-import org.jvss.physical.DeltaUtil;
+import org.jvss.physical.FileSource;
 import org.jvss.physical.ItemFile;
 import org.jvss.physical.RecordNotFoundException;
-import org.jvss.physical.RevisionRecord;
+import org.jvss.physical.RevisionRecord.Action;
 import org.jvss.physical.RevisionRecord.BranchRevisionRecord;
-import org.jvss.physical.RevisionRecord.EditRevisionRecord;
+import org.jvss.physical.RevisionView;
+import org.jvss.physical.SegmentedBuffer;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
 
 /**
  * Represents a revision of a VSS file.
@@ -42,67 +42,109 @@ public class VssFileRevision extends VssRevision
       return (VssFile)item;
    }
 
+   /**
+    * @return the contents of the revision, from the database's content cache
+    *         if they are there
+    */
    public InputStream getContents() throws IOException
    {
+      ContentCache cache = item.getDatabase().getContentCache();
+      String physicalName = item.getPhysicalName();
+      InputStream cached = cache.get(physicalName, getVersion());
+      if (cached != null)
+      {
+         return cached;
+      }
 
-      File vssFile = new File(item.getDataPath().toLowerCase());
-
-      if (!vssFile.exists())
+      RevisionStore store = item.getDatabase().getRevisionStore();
+      long[] fingerprint = store != null ? RevisionStore.fingerprint(item) : null;
+      if (fingerprint != null)
       {
-         throw new RecordNotFoundException("File " + vssFile.getAbsolutePath() + " not found");
+         File stored = store.find(physicalName, getVersion(), fingerprint);
+         if (stored != null)
+         {
+            return cache(new FileInputStream(stored), stored.length());
+         }
       }
 
-      InputStream dataFile = new FileInputStream(item.getDataPath().toLowerCase());
+      FileSource source = item.getDatabase().getContentSource();
+      String dataPath = item.getDataPath().toLowerCase();
+
+      if (!source.exists(dataPath))
+      {
+         throw new RecordNotFoundException("File " + dataPath + " not found");
+      }
 
       ItemFile itemFile = item.getItemFile();
-      RevisionRecord lastRev = itemFile.GetLastRevision();
-      if (lastRev != null)
+      int index = itemFile.getIndexedRevisionCount() - 1;
+      CheckpointIndex checkpoints = item.getDatabase().getCheckpointIndex();
+      Checkpoint checkpoint = checkpoints != null ? checkpoints.find(getFile(), getVersion()) : null;
+      if (checkpoint != null)
       {
-         List<DeltaOperation> deltaOps = null;
-         while (lastRev != null && lastRev.getRevision() > this.getVersion())
+         itemFile = item.getDatabase().getItemFile(checkpoint.getPhysicalName());
+         index = checkpoint.getIndex();
+      }
+      CompactDelta deltaOps = null;
+      while (index >= 0 && itemFile.getRevisionNumber(index) > this.getVersion())
+      {
+         Action action = itemFile.getRevisionAction(index);
+         if (action == Action.BranchFile || action == Action.CreateBranch)
          {
-
-            if (lastRev instanceof BranchRevisionRecord)
-            {
-               BranchRevisionRecord branchRev = (BranchRevisionRecord)lastRev;
-               int branchRevId = branchRev.getRevision();
-               String itemPath = item.getDatabase().GetDataPath(branchRev.getBranchFile());
-               itemFile = new ItemFile(itemPath, item.getDatabase().getEncoding());
-               lastRev = itemFile.GetLastRevision();
-               while (lastRev != null && lastRev.getRevision() >= branchRevId)
-               {
-                  lastRev = itemFile.getPreviousRevision(lastRev);
-               }
-            }
-            else
+            BranchRevisionRecord branchRev = (BranchRevisionRecord)itemFile.getRevisionAt(index);
+            int branchRevId = branchRev.getRevision();
+            itemFile = item.getDatabase().getItemFile(branchRev.getBranchFile());
+            index = itemFile.getRevisionIndex(branchRevId) - 1;
+         }
+         else
+         {
+            if (action == Action.EditFile)
             {
-
-               if (lastRev instanceof EditRevisionRecord)
+               DeltaRecord delta = itemFile.getPreviousDeltaAt(index);
+               if (delta != null)
                {
-                  EditRevisionRecord editRev = (EditRevisionRecord)lastRev;
-                  DeltaRecord delta = itemFile.getPreviousDelta(editRev);
-                  if (delta != null)
-                  {
-                     List<DeltaOperation> curDeltaOps = delta.getOperations();
-                     deltaOps = deltaOps == null ? curDeltaOps : DeltaUtil.merge(deltaOps, curDeltaOps);
-                  }
+                  CompactDelta curDeltaOps = delta.getDelta();
+                  deltaOps = deltaOps == null ? curDeltaOps : CompactDelta.merge(deltaOps, curDeltaOps);
                }
-               lastRev = itemFile.getPreviousRevision(lastRev);
             }
+            --index;
          }
+      }
 
-         if (deltaOps != null)
-         {
-            dataFile = new DeltaStream(dataFile, deltaOps);
-         }
+      InputStream contents;
+      long length;
+      if (deltaOps != null)
+      {
+         // the latest revision is mapped rather than loaded, so it may be any size
+         SegmentedBuffer base = checkpoint != null ? checkpoint.map() : source.map(dataPath);
+         contents = new DeltaStream(base, deltaOps);
+         length = deltaOps.length();
       }
+      else if (checkpoint != null)
+      {
+         contents = checkpoint.open();
+         length = checkpoint.length();
+      }
+      else
+      {
+         contents = source.open(dataPath);
+         length = source.length(dataPath);
+      }
+      if (fingerprint != null)
+      {
+         contents = new FileInputStream(store.put(physicalName, getVersion(), fingerprint, contents));
+      }
+      return cache(contents, length);
+   }
 
-      return dataFile;
+   private InputStream cache(InputStream contents, long length) throws IOException
+   {
+      ContentCache cache = item.getDatabase().getContentCache();
+      return cache.accepts(length) ? cache.put(item.getPhysicalName(), getVersion(), contents, length) : contents;
    }
 
-   protected VssFileRevision(VssItem item, RevisionRecord revision, CommentRecord comment)
+   protected VssFileRevision(VssItem item, RevisionView revision)
    {
-      super(item, revision, comment);
+      super(item, revision);
    }
 
 }
@@ -15,16 +15,19 @@
  */
 package org.jvss.logical;
 
-import org.jvss.physical.CommentRecord;
 import org.jvss.physical.FileHeaderRecord;
 import org.jvss.physical.ItemFile;
-import org.jvss.physical.RevisionRecord;
 import org.jvss.physical.RevisionRecord.Action;
+import org.jvss.physical.RevisionView;
 
 import java.util.Iterator;
 
 /**
  * Represents an abstract VSS item, which is a project or file.
+ * <p>
+ * Items are safe to use from several threads: the item file is shared through the
+ * database's item file cache, revisions are read by offset, and each call to {@link #getRevisions()}
+ * returns an independent iterator. An iterator itself must stay on one thread.
  */
 public abstract class VssItem
 {
@@ -34,7 +37,11 @@ public abstract class VssItem
 
    protected final String physicalPath;
 
-   private ItemFile itemFile;
+   /**
+    * The item file, if it is too large for the item file cache, which would
+    * otherwise reopen it on every use.
+    */
+   private volatile ItemFile uncachedItemFile;
 
    public VssDatabase getDatabase()
    {
@@ -104,32 +111,33 @@ public abstract class VssItem
          }
       }
 
-      RevisionRecord revisionRecord = itemFile.GetFirstRevision();
-      while (revisionRecord != null && revisionRecord.getRevision() < version)
-      {
-         revisionRecord = itemFile.GetNextRevision(revisionRecord);
-      }
-      if (revisionRecord == null)
+      int index = itemFile.getRevisionIndex(version);
+      if (index >= itemFile.getIndexedRevisionCount())
       {
          throw new IllegalArgumentException("Version not found" + "version");
       }
-      return CreateRevision(revisionRecord);
+      return CreateRevision(itemFile.getRevisionView(index));
    }
 
+   /**
+    * @return the item file, from the database's item file cache; items only
+    *         hold on to files the cache does not keep, so the cache bounds the
+    *         memory used by the others
+    */
    protected ItemFile getItemFile()
    {
+      ItemFile itemFile = uncachedItemFile;
       if (itemFile == null)
       {
-         itemFile = new ItemFile(physicalPath, database.getEncoding());
+         itemFile = database.getItemFile(itemName.getPhysicalName());
+         if (!database.getItemFileCache().accepts(itemFile))
+         {
+            uncachedItemFile = itemFile;
+         }
       }
       return itemFile;
    }
 
-   protected void setItemFile(ItemFile value)
-   {
-      itemFile = value;
-   }
-
    protected VssItem(VssDatabase database, VssItemName itemName, String physicalPath)
    {
       this.database = database;
@@ -137,25 +145,33 @@ public abstract class VssItem
       this.physicalPath = physicalPath;
    }
 
-   protected VssRevision CreateRevision(RevisionRecord revision)
+   protected VssRevision CreateRevision(RevisionView revision)
+   {
+      return createRevision(revision);
+   }
+
+   protected abstract VssRevision createRevision(RevisionView revision);
+
+   /**
+    * Reads the comment of a revision of this item, or the label comment of a
+    * label, through the database's comment cache.
+    *
+    * @return the comment, or null if the revision has none
+    */
+   String getComment(RevisionView revision)
    {
-      CommentRecord comment = null;
       if (revision.getCommentLength() > 0 && revision.getCommentOffset() > 0)
       {
-         comment = new CommentRecord();
-         getItemFile().ReadRecord(comment, revision.getCommentOffset());
+         return database.getComment(this, revision.getCommentOffset());
       }
       else if (revision.getAction() == Action.Label && revision.getLabelCommentLength() > 0
          && revision.getLabelCommentOffset() > 0)
       {
-         comment = new CommentRecord();
-         getItemFile().ReadRecord(comment, revision.getLabelCommentOffset());
+         return database.getComment(this, revision.getLabelCommentOffset());
       }
-      return createRevision(revision, comment);
+      return null;
    }
 
-   protected abstract VssRevision createRevision(RevisionRecord revision, CommentRecord comment);
-
    public static class VssRevisions implements Iterable<VssRevision>
    {
       private final VssItem item;
@@ -180,11 +196,13 @@ public abstract class VssItem
 
       private final VssItem item;
 
-      private RevisionRecord revisionRecord;
+      private RevisionView revisionRecord;
 
       private VssRevision revision;
 
-      private boolean beforeFirst = true;
+      private int index = -1;
+
+      private ItemFile itemFile;
 
       private VssRevisionEnumerator(VssItem item)
       {
@@ -198,14 +216,14 @@ public abstract class VssItem
       public boolean hasNext()
       {
          revision = null;
-         if (beforeFirst)
+         revisionRecord = null;
+         if (itemFile == null)
          {
-            revisionRecord = item.getItemFile().GetFirstRevision();
-            beforeFirst = false;
+            itemFile = item.getItemFile();
          }
-         else if (revisionRecord != null)
+         if (index + 1 < itemFile.getIndexedRevisionCount())
          {
-            revisionRecord = item.getItemFile().GetNextRevision(revisionRecord);
+            revisionRecord = itemFile.getRevisionView(++index);
          }
          return revisionRecord != null;
       }
@@ -231,7 +249,7 @@ public abstract class VssItem
 
       public void Reset()
       {
-         beforeFirst = true;
+         index = -1;
       }
 
       /**
@@ -15,6 +15,8 @@
  */
 package org.jvss.logical;
 
+import org.jvss.physical.PhysicalName;
+
 /**
  * Represents the name of a VSS item.
  */
@@ -57,6 +59,15 @@ public class VssItemName
       return physicalName;
    }
 
+   /**
+    * @return The physical name packed into a long, for use as a compact key.
+    * @see PhysicalName
+    */
+   public long getPhysicalKey()
+   {
+      return PhysicalName.encode(physicalName);
+   }
+
    /**
     * @return Indicates whether this item is a project or a file.
     */
@@ -15,13 +15,15 @@
  */
 package org.jvss.logical;
 
-import org.jvss.physical.CommentRecord;
 import org.jvss.physical.ItemHeaderRecord.ItemType;
 import org.jvss.physical.ProjectEntryFile;
 import org.jvss.physical.ProjectEntryRecord;
-import org.jvss.physical.RevisionRecord;
+import org.jvss.physical.RecordCursor;
+import org.jvss.physical.RevisionView;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Represents a VSS project.
@@ -30,6 +32,10 @@ public class VssProject extends VssItem
 {
    private final String logicalPath;
 
+   private volatile ProjectEntries entries;
+
+   private VssProject[] subprojects;
+
    /**
     * @return the logicalPath
     */
@@ -63,28 +69,22 @@ public class VssProject extends VssItem
       return (VssProjectRevision)super.GetRevision(version);
    }
 
+   /**
+    * @return the subproject with the given name, ignoring case, or null
+    */
    public VssProject findProject(String name)
    {
-      for (VssProject subproject : getProjects())
-      {
-         if (name == subproject.getName())
-         {
-            return subproject;
-         }
-      }
-      return null;
+      int index = getEntries().find(name, ItemType.PROJECT);
+      return index >= 0 ? (VssProject)getEntry(index) : null;
    }
 
+   /**
+    * @return the file with the given name, ignoring case, or null
+    */
    public VssFile findFile(String name)
    {
-      for (VssFile file : getFiles())
-      {
-         if (name == file.getName())
-         {
-            return file;
-         }
-      }
-      return null;
+      int index = getEntries().find(name, ItemType.FILE);
+      return index >= 0 ? (VssFile)getEntry(index) : null;
    }
 
    public VssItem findItem(String name)
@@ -103,15 +103,59 @@ public class VssProject extends VssItem
       this.logicalPath = logicalPath;
    }
 
+   /**
+    * @return the entries of this project, read from its data file on first use
+    */
+   private ProjectEntries getEntries()
+   {
+      ProjectEntries result = entries;
+      if (result == null)
+      {
+         synchronized (this)
+         {
+            result = entries;
+            if (result == null)
+            {
+               result = ProjectEntries.read(this);
+               subprojects = new VssProject[result.size()];
+               entries = result;
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Opens the item for an entry. Subprojects are kept, since their own
+    * entries are cached; files are opened on demand so that their item files
+    * can be released.
+    */
+   private VssItem getEntry(int index)
+   {
+      ProjectEntries entries = getEntries();
+      if (entries.getItemType(index) == ItemType.PROJECT)
+      {
+         synchronized (subprojects)
+         {
+            if (subprojects[index] == null)
+            {
+               subprojects[index] =
+                  database.OpenProject(this, entries.getPhysicalName(index), entries.getLogicalName(index));
+            }
+            return subprojects[index];
+         }
+      }
+      return database.OpenFile(entries.getPhysicalName(index), entries.getLogicalName(index));
+   }
+
    /**
     * 
-    * @see org.jvss.logical.VssItem#createRevision(org.jvss.physical.RevisionRecord,
-    *      org.jvss.physical.CommentRecord)
+    * @see org.jvss.logical.VssItem#createRevision(org.jvss.physical.RevisionView)
     */
    @Override
-   protected VssRevision createRevision(RevisionRecord revision, CommentRecord comment)
+   protected VssRevision createRevision(RevisionView revision)
    {
-      return new VssProjectRevision(this, revision, comment);
+      return new VssProjectRevision(this, revision);
    }
 
    private class VssProjects implements Iterable<VssProject>
@@ -133,7 +177,7 @@ public class VssProject extends VssItem
       @Override
       public Iterator<VssProject> iterator()
       {
-         return new VssItemEnumerator<VssProject>(project, ItemTypes.Project, project.getDataPath());
+         return new VssItemEnumerator<VssProject>(project, ItemTypes.Project);
       }
    }
 
@@ -156,7 +200,7 @@ public class VssProject extends VssItem
       @Override
       public Iterator<VssFile> iterator()
       {
-         return new VssItemEnumerator<VssFile>(project, ItemTypes.File, project.getDataPath());
+         return new VssItemEnumerator<VssFile>(project, ItemTypes.File);
       }
    }
 
@@ -192,19 +236,17 @@ public class VssProject extends VssItem
 
       private final ItemTypes itemTypes;
 
-      private final ProjectEntryFile entryFile;
-
-      private ProjectEntryRecord entryRecord;
+      private final ProjectEntries entries;
 
-      private T entryItem;
+      private int index = -1;
 
-      private boolean beforeFirst = true;
+      private int nextIndex = -1;
 
-      private VssItemEnumerator(VssProject project, ItemTypes itemTypes, String entryFilePath)
+      private VssItemEnumerator(VssProject project, ItemTypes itemTypes)
       {
          this.project = project;
          this.itemTypes = itemTypes;
-         this.entryFile = new ProjectEntryFile(entryFilePath, project.getDatabase().getEncoding());
+         this.entries = project.getEntries();
       }
 
       /**
@@ -213,56 +255,196 @@ public class VssProject extends VssItem
       @Override
       public boolean hasNext()
       {
-         entryItem = null;
-         do
+         if (nextIndex <= index)
          {
-            entryRecord = beforeFirst ? entryFile.getFirstEntry() : entryFile.GetNextEntry();
-            beforeFirst = false;
+            nextIndex = index + 1;
+            while (nextIndex < entries.size()
+               && (itemTypes.getValue() & entries.getItemType(nextIndex).getValue()) == 0)
+            {
+               ++nextIndex;
+            }
          }
-         while (entryRecord != null && (itemTypes.getValue() & entryRecord.getItemType().getValue()) == 0);
-         return entryRecord != null;
+         return nextIndex < entries.size();
       }
 
       /**
        * @see java.util.Iterator#next()
        */
       @Override
+      @SuppressWarnings("unchecked")
       public T next()
       {
-         if (entryRecord == null)
+         if (!hasNext())
          {
-            throw new IllegalStateException();
+            throw new NoSuchElementException();
          }
+         index = nextIndex;
+         return (T)project.getEntry(index);
+      }
 
-         if (entryItem == null)
+      public void Reset()
+      {
+         index = -1;
+         nextIndex = -1;
+      }
+
+      /**
+       * @see java.util.Iterator#remove()
+       */
+      @Override
+      public void remove()
+      {
+         throw new UnsupportedOperationException();
+      }
+
+   }
+
+   /**
+    * The entries of a project in file order, with a case-insensitive hash
+    * index on their logical names. The index is an open-addressing table of
+    * entry numbers; entries with equal names are found in file order.
+    */
+   private static class ProjectEntries
+   {
+      private final String[] logicalNames;
+
+      private final String[] physicalNames;
+
+      private final ItemType[] itemTypes;
+
+      private final int[] table;
+
+      private final int count;
+
+      private ProjectEntries(String[] logicalNames, String[] physicalNames, ItemType[] itemTypes, int count)
+      {
+         this.logicalNames = logicalNames;
+         this.physicalNames = physicalNames;
+         this.itemTypes = itemTypes;
+         this.count = count;
+
+         int capacity = 8;
+         while (capacity < count * 2)
+         {
+            capacity <<= 1;
+         }
+         table = new int[capacity];
+         for (int i = 0; i < count; ++i)
+         {
+            int slot = hash(logicalNames[i]) & capacity - 1;
+            while (table[slot] != 0)
+            {
+               slot = slot + 1 & capacity - 1;
+            }
+            table[slot] = i + 1;
+         }
+      }
+
+      /**
+       * Takes the entries from the tree snapshot if the project files are
+       * unchanged, and otherwise reads the project data file in one pass.
+       */
+      static ProjectEntries read(VssProject project)
+      {
+         VssDatabase database = project.getDatabase();
+         TreeSnapshot snapshot = database.getTreeSnapshot();
+         if (snapshot != null)
+         {
+            TreeSnapshot.Project cached = snapshot.get(project);
+            if (cached != null)
+            {
+               database.prefetchEntries(cached.physicalNames, cached.itemTypes, cached.count);
+               return new ProjectEntries(cached.logicalNames, cached.physicalNames, cached.itemTypes, cached.count);
+            }
+         }
+
+         String dataExt = project.getItemFile().getHeader().getDataExt();
+         long[] stamp = snapshot != null ? snapshot.stamp(project, dataExt) : null;
+         ProjectEntryFile entryFile =
+            new ProjectEntryFile(project.getDataPath(), database.getEncoding(), database.getCrcVerifier(),
+               database.getFileSource());
+         String[] logicalNames = new String[16];
+         String[] physicalNames = new String[16];
+         ItemType[] itemTypes = new ItemType[16];
+         int count = 0;
+
+         RecordCursor cursor = entryFile.openCursor();
+         ProjectEntryRecord entryRecord = new ProjectEntryRecord();
+         while (cursor.next())
          {
-            String physicalName = entryRecord.getPhysical().toUpperCase();
-            String logicalName = project.database.GetFullName(entryRecord.getName());
-            if (entryRecord.getItemType() == ItemType.PROJECT)
+            if (cursor.getSignatureCode() != ProjectEntryRecord.SIGNATURE_CODE)
             {
-               entryItem = (T)project.database.OpenProject(project, physicalName, logicalName);
+               continue;
             }
-            else
+            cursor.read(entryRecord);
+            if (count == logicalNames.length)
             {
-               entryItem = (T)project.database.OpenFile(physicalName, logicalName);
+               logicalNames = Arrays.copyOf(logicalNames, count * 2);
+               physicalNames = Arrays.copyOf(physicalNames, count * 2);
+               itemTypes = Arrays.copyOf(itemTypes, count * 2);
             }
+            logicalNames[count] = database.GetFullName(entryRecord.getName());
+            physicalNames[count] = entryRecord.getPhysical().toUpperCase();
+            itemTypes[count] = entryRecord.getItemType();
+            ++count;
+         }
+         if (snapshot != null)
+         {
+            snapshot.put(project, dataExt, stamp, logicalNames, physicalNames, itemTypes, count);
          }
+         database.prefetchEntries(physicalNames, itemTypes, count);
+         return new ProjectEntries(logicalNames, physicalNames, itemTypes, count);
+      }
 
-         return entryItem;
+      int size()
+      {
+         return count;
       }
 
-      public void Reset()
+      String getLogicalName(int index)
+      {
+         return logicalNames[index];
+      }
+
+      String getPhysicalName(int index)
+      {
+         return physicalNames[index];
+      }
+
+      ItemType getItemType(int index)
       {
-         beforeFirst = true;
+         return itemTypes[index];
       }
 
       /**
-       * @see java.util.Iterator#remove()
+       * @return the first entry of the given type with the given name,
+       *         ignoring case, or -1 if there is none
        */
-      @Override
-      public void remove()
+      int find(String name, ItemType itemType)
       {
+         int mask = table.length - 1;
+         for (int slot = hash(name) & mask; table[slot] != 0; slot = slot + 1 & mask)
+         {
+            int index = table[slot] - 1;
+            if (itemTypes[index] == itemType && logicalNames[index].equalsIgnoreCase(name))
+            {
+               return index;
+            }
+         }
+         return -1;
       }
 
+      /**
+       * Hashes a name consistently with {@link String#equalsIgnoreCase(String)}.
+       */
+      private static int hash(String name)
+      {
+         int h = 0;
+         for (int i = 0; i < name.length(); ++i)
+         {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+         }
+         return h ^ h >>> 16;
+      }
    }
 }
@@ -15,8 +15,7 @@
  */
 package org.jvss.logical;
 
-import org.jvss.physical.CommentRecord;
-import org.jvss.physical.RevisionRecord;
+import org.jvss.physical.RevisionView;
 
 /**
  * Represents a revision of a VSS project.
@@ -27,11 +26,10 @@ public class VssProjectRevision extends VssRevision
    /**
     * @param item
     * @param revision
-    * @param comment
     */
-   public VssProjectRevision(VssItem item, RevisionRecord revision, CommentRecord comment)
+   public VssProjectRevision(VssItem item, RevisionView revision)
    {
-      super(item, revision, comment);
+      super(item, revision);
    }
 
    public VssProject getProject()
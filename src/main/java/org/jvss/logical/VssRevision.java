@@ -29,7 +29,6 @@ import org.jvss.logical.VssAction.VssRecoverAction;
 import org.jvss.logical.VssAction.VssRenameAction;
 import org.jvss.logical.VssAction.VssRestoreAction;
 import org.jvss.logical.VssAction.VssShareAction;
-import org.jvss.physical.CommentRecord;
 import org.jvss.physical.RevisionRecord;
 import org.jvss.physical.RevisionRecord.ArchiveRevisionRecord;
 import org.jvss.physical.RevisionRecord.BranchRevisionRecord;
@@ -38,22 +37,27 @@ import org.jvss.physical.RevisionRecord.DestroyRevisionRecord;
 import org.jvss.physical.RevisionRecord.MoveRevisionRecord;
 import org.jvss.physical.RevisionRecord.RenameRevisionRecord;
 import org.jvss.physical.RevisionRecord.ShareRevisionRecord;
+import org.jvss.physical.RevisionView;
 
 import java.util.Date;
 
 /**
  * Base class for revisions to a VSS item.
- * 
+ * <p>
+ * The version, date, user and label are read from a {@link RevisionView}, so
+ * they are available without decoding the whole revision record. The record
+ * is decoded, and the names it refers to resolved, on the first call to
+ * {@link #getAction()} or {@link #getRevision()}. The comment is not kept by
+ * the revision; {@link #getComment()} reads it through the database's comment
+ * cache.
  */
 public class VssRevision
 {
    protected final VssItem item;
 
-   protected final VssAction action;
-
-   protected final RevisionRecord revision;
+   protected final RevisionView revision;
 
-   protected final CommentRecord comment;
+   private volatile VssAction action;
 
    /**
     * @return the item
@@ -68,7 +72,13 @@ public class VssRevision
     */
    public VssAction getAction()
    {
-      return action;
+      VssAction result = action;
+      if (result == null)
+      {
+         // creating the action twice on a race is harmless
+         action = result = createAction(revision, item);
+      }
+      return result;
    }
 
    public int getVersion()
@@ -77,9 +87,17 @@ public class VssRevision
    }
 
    /**
-    * @return the revision
+    * @return the revision, decoding the whole record if it has not been yet
     */
    public RevisionRecord getRevision()
+   {
+      return revision.getRecord();
+   }
+
+   /**
+    * @return the view of the revision record
+    */
+   public RevisionView getRevisionView()
    {
       return revision;
    }
@@ -101,21 +119,33 @@ public class VssRevision
 
    public String getComment()
    {
-      return comment != null ? comment.getComment() : null;
+      return item.getComment(revision);
    }
 
    /**
     * @param item
     * @param revision
-    * @param comment
     */
-   protected VssRevision(VssItem item, RevisionRecord revision, CommentRecord comment)
+   protected VssRevision(VssItem item, RevisionView revision)
    {
       super();
       this.item = item;
       this.revision = revision;
-      this.comment = comment;
-      this.action = createAction(revision, item);
+   }
+
+   private static VssAction createAction(RevisionView view, VssItem item)
+   {
+      switch (view.getAction())
+      {
+         case Label : {
+            return new VssLabelAction(view.getLabel());
+         }
+         case EditFile : {
+            return new VssEditAction(item.getPhysicalName());
+         }
+         default :
+            return createAction(view.getRecord(), item);
+      }
    }
 
    private static VssAction createAction(RevisionRecord revision, VssItem item)
@@ -123,9 +153,6 @@ public class VssRevision
       VssDatabase db = item.getDatabase();
       switch (revision.getAction())
       {
-         case Label : {
-            return new VssLabelAction(revision.getLabel());
-         }
          case DestroyProject :
          case DestroyFile : {
             DestroyRevisionRecord destroy = (DestroyRevisionRecord)revision;
@@ -157,9 +184,6 @@ public class VssRevision
             return new VssBranchAction(new VssItemName(name, branch.getPhysical(), branch.getName().isProject()),
                new VssItemName(name, branch.getBranchFile(), branch.getName().isProject()));
          }
-         case EditFile : {
-            return new VssEditAction(item.getPhysicalName());
-         }
          case CreateProject :
          case CreateFile : {
             CommonRevisionRecord create = (CommonRevisionRecord)revision;
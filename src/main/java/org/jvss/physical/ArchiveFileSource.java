@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of file sources reading a database straight from an archive.
+ * <p>
+ * The archive is mounted at a path, by default the path of the archive file
+ * itself, so a database opened at <code>backup.zip</code> finds its
+ * <code>srcsafe.ini</code> at <code>backup.zip/srcsafe.ini</code>. The entries
+ * are indexed once, when the archive is opened. Entry names are matched
+ * without regard to case, as VSS lower-cases the paths it builds, and
+ * relative to the directory of the outermost <code>srcsafe.ini</code> in the
+ * archive, so backups that keep the database in a subdirectory can be opened
+ * without naming it.
+ * 
+ * @param <E>
+ *           the type of the archive entries
+ */
+public abstract class ArchiveFileSource<E> implements FileSource, Closeable
+{
+   private static final String INI_FILE = "srcsafe.ini";
+
+   private final String mountPath;
+
+   private final Map<String, E> entries = new HashMap<String, E>();
+
+   private String root;
+
+   /**
+    * Opens the archive with the backend matching its extension:
+    * <code>.zip</code> or <code>.tar</code>.
+    */
+   public static ArchiveFileSource<?> open(File archive) throws IOException
+   {
+      String name = archive.getName().toLowerCase();
+      if (name.endsWith(".zip"))
+      {
+         return new ZipFileSource(archive);
+      }
+      else if (name.endsWith(".tar"))
+      {
+         return new TarFileSource(archive);
+      }
+      throw new IllegalArgumentException("Unsupported archive type: " + archive);
+   }
+
+   /**
+    * @return whether the given path names an archive that {@link #open(File)}
+    *         can read
+    */
+   public static boolean isArchive(File file)
+   {
+      String name = file.getName().toLowerCase();
+      return file.isFile() && (name.endsWith(".zip") || name.endsWith(".tar"));
+   }
+
+   /**
+    * @param mountPath
+    *           the path at which the root of the archive appears
+    */
+   protected ArchiveFileSource(String mountPath)
+   {
+      this.mountPath = normalize(new File(mountPath).getAbsolutePath());
+   }
+
+   /**
+    * @return the mountPath
+    */
+   public String getMountPath()
+   {
+      return mountPath;
+   }
+
+   /**
+    * @return the number of files in the archive
+    */
+   public int getEntryCount()
+   {
+      return entries.size();
+   }
+
+   /**
+    * Adds a file entry to the index; called while the archive is opened.
+    */
+   protected void index(String entryName, E entry)
+   {
+      String name = normalize(entryName).toLowerCase();
+      while (name.startsWith("/"))
+      {
+         name = name.substring(1);
+      }
+      entries.put(name, entry);
+      if (name.equals(INI_FILE) || name.endsWith("/" + INI_FILE))
+      {
+         String dir = name.substring(0, name.length() - INI_FILE.length());
+         if (root == null || depth(dir) < depth(root))
+         {
+            root = dir;
+         }
+      }
+   }
+
+   /**
+    * @return the entry of the file at the given path, or null if the archive
+    *         has no such file
+    */
+   protected E find(String path)
+   {
+      String name = normalize(path);
+      if (!name.regionMatches(true, 0, mountPath, 0, mountPath.length()))
+      {
+         return null;
+      }
+      name = name.substring(mountPath.length());
+      if (name.length() > 0 && name.charAt(0) != '/')
+      {
+         return null;
+      }
+      while (name.startsWith("/"))
+      {
+         name = name.substring(1);
+      }
+      return entries.get(root != null ? root + name.toLowerCase() : name.toLowerCase());
+   }
+
+   /**
+    * @return the entry of the file at the given path
+    * @throws FileNotFoundException
+    *            if the archive has no such file
+    */
+   protected E get(String path) throws FileNotFoundException
+   {
+      E entry = find(path);
+      if (entry == null)
+      {
+         throw new FileNotFoundException(path);
+      }
+      return entry;
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#exists(java.lang.String)
+    */
+   @Override
+   public boolean exists(String path)
+   {
+      return find(path) != null;
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#length(java.lang.String)
+    */
+   @Override
+   public long length(String path) throws IOException
+   {
+      return size(get(path));
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#lastModified(java.lang.String)
+    */
+   @Override
+   public long lastModified(String path) throws IOException
+   {
+      return lastModified(get(path));
+   }
+
+   /**
+    * @return the uncompressed size of the entry
+    */
+   protected abstract long size(E entry);
+
+   /**
+    * @return the modification time recorded for the entry, or 0 if none is
+    */
+   protected abstract long lastModified(E entry);
+
+   private static int depth(String dir)
+   {
+      int depth = 0;
+      for (int i = 0; i < dir.length(); ++i)
+      {
+         if (dir.charAt(i) == '/')
+         {
+            ++depth;
+         }
+      }
+      return depth;
+   }
+
+   private static String normalize(String path)
+   {
+      return path.replace('\\', '/');
+   }
+}
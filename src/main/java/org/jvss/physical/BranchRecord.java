@@ -26,6 +26,8 @@ public class BranchRecord extends VssRecord
 {
    public final static String SIGNATURE = "BF";
 
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
    private int prevBranchOffset;
 
    private String branchFile;
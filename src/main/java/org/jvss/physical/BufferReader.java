@@ -20,22 +20,26 @@ import org.jvss.hash.VssCRC32;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
 import java.util.Date;
 
 /**
  * Reads VSS data types from a byte buffer.
+ * <p>
+ * The reader works directly over a little-endian {@link ByteBuffer}, which may
+ * be a heap buffer or a memory-mapped file, using absolute reads only. Fields
+ * are decoded without intermediate wrappers and {@link #extract(int)} returns
+ * a reader sharing the same buffer, so no record bytes are copied.
  */
 public class BufferReader
 {
 
    private final String encoding;
 
-   private final byte[] data;
+   private final ByteBuffer data;
 
    private int offset;
 
-   private final int limit;
+   private int limit;
 
    public BufferReader(String encoding, byte[] data)
    {
@@ -43,9 +47,20 @@ public class BufferReader
    }
 
    public BufferReader(String encoding, byte[] data, int offset, int limit)
+   {
+      this(encoding, ByteBuffer.wrap(data), offset, limit);
+   }
+
+   public BufferReader(String encoding, ByteBuffer data)
+   {
+      this(encoding, data, 0, data.limit());
+   }
+
+   public BufferReader(String encoding, ByteBuffer data, int offset, int limit)
    {
       this.encoding = encoding;
-      this.data = data;
+      // never change the byte order of a buffer owned by the caller
+      this.data = data.order() == ByteOrder.LITTLE_ENDIAN ? data : data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
       this.offset = offset;
       this.limit = limit;
    }
@@ -74,7 +89,7 @@ public class BufferReader
       short sum = 0;
       for (int i = offset; i < limit; ++i)
       {
-         sum += data[i];
+         sum += data.get(i);
       }
       return sum;
    }
@@ -90,6 +105,37 @@ public class BufferReader
       return VssCRC32.VssCrc16(data, offset, offset + bytes);
    }
 
+   /**
+    * Computes the CRC of a range of the buffer without moving the offset.
+    */
+   public short crc16At(int from, int bytes)
+   {
+      if (from < 0 || from + bytes > limit)
+      {
+         throw new EndOfBufferException(String.format("Attempted CRC of %d bytes at %d beyond buffer limit %d", bytes,
+            from, limit));
+      }
+      return VssCRC32.VssCrc16(data, from, from + bytes);
+   }
+
+   /**
+    * @return a reader over the same buffer and range with its own offset
+    */
+   public BufferReader duplicate()
+   {
+      return new BufferReader(encoding, data, offset, limit);
+   }
+
+   /**
+    * Moves this reader over another range of the same buffer, so that a single
+    * instance can stand in for repeated calls to {@link #extract(int)}.
+    */
+   void setRange(int offset, int limit)
+   {
+      this.offset = offset;
+      this.limit = limit;
+   }
+
    public void skip(int bytes)
    {
       CheckRead(bytes);
@@ -99,7 +145,7 @@ public class BufferReader
    public short readInt16()
    {
       CheckRead(2);
-      short result = ByteBuffer.wrap(data, offset, 2).order(ByteOrder.LITTLE_ENDIAN).getShort();
+      short result = data.getShort(offset);
       offset += 2;
       return result;
    }
@@ -107,9 +153,9 @@ public class BufferReader
    public int readInt32()
    {
       CheckRead(4);
-      int result2 = ByteBuffer.wrap(data, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+      int result = data.getInt(offset);
       offset += 4;
-      return result2;
+      return result;
    }
 
    public Date readDateTime()
@@ -123,7 +169,7 @@ public class BufferReader
       StringBuilder buf = new StringBuilder(length);
       for (int i = 0; i < length; ++i)
       {
-         buf.append((char)data[offset++]);
+         buf.append((char)data.get(offset++));
       }
       return buf.toString();
    }
@@ -141,7 +187,7 @@ public class BufferReader
       int count = 0;
       for (int i = 0; i < fieldSize; ++i)
       {
-         if (data[offset + i] == 0)
+         if (data.get(offset + i) == 0)
          {
             break;
          }
@@ -150,7 +196,16 @@ public class BufferReader
       String str;
       try
       {
-         str = new String(data, offset, count, encoding);
+         if (data.hasArray())
+         {
+            str = new String(data.array(), data.arrayOffset() + offset, count, encoding);
+         }
+         else
+         {
+            byte[] bytes = new byte[count];
+            copyTo(offset, bytes, 0, count);
+            str = new String(bytes, encoding);
+         }
       }
       catch (UnsupportedEncodingException e)
       {
@@ -180,18 +235,30 @@ public class BufferReader
    {
       CheckRead(bytes);
 
-      byte[] result = Arrays.copyOfRange(data, offset, offset + bytes);
+      byte[] result = new byte[bytes];
+      copyTo(offset, result, 0, bytes);
       offset += bytes;
       return result;
    }
 
+   /**
+    * Copies the given number of bytes into the given array, without allocating
+    * one as {@link #getBytes(int)} does.
+    */
+   public void readBytes(byte[] dest, int destOffset, int bytes)
+   {
+      CheckRead(bytes);
+      copyTo(offset, dest, destOffset, bytes);
+      offset += bytes;
+   }
+
    public String formatBytes(int bytes)
    {
       int formatLimit = Math.min(limit, offset + bytes);
       StringBuilder buf = new StringBuilder((formatLimit - offset) * 3);
       for (int i = offset; i < formatLimit; ++i)
       {
-         buf.append(String.format("{0:X2} ", data[i]));
+         buf.append(String.format("{0:X2} ", data.get(i)));
       }
       return buf.toString();
    }
@@ -201,6 +268,20 @@ public class BufferReader
       return formatBytes(getRemaining());
    }
 
+   private void copyTo(int from, byte[] dest, int destOffset, int length)
+   {
+      if (data.hasArray())
+      {
+         System.arraycopy(data.array(), data.arrayOffset() + from, dest, destOffset, length);
+      }
+      else
+      {
+         ByteBuffer view = data.duplicate();
+         view.position(from);
+         view.get(dest, destOffset, length);
+      }
+   }
+
    private void CheckRead(int bytes)
    {
       if (offset + bytes > limit)
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over the remaining bytes of a buffer. The stream has its own
+ * position, so the buffer given is not modified.
+ */
+public class ByteBufferInputStream extends InputStream
+{
+   private final ByteBuffer buffer;
+
+   private int mark;
+
+   public ByteBufferInputStream(ByteBuffer buffer)
+   {
+      this.buffer = buffer.duplicate();
+      this.mark = this.buffer.position();
+   }
+
+   /**
+    * @see java.io.InputStream#read()
+    */
+   @Override
+   public int read()
+   {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+   }
+
+   /**
+    * @see java.io.InputStream#read(byte[], int, int)
+    */
+   @Override
+   public int read(byte[] b, int off, int len)
+   {
+      if (off < 0 || len < 0 || len > b.length - off)
+      {
+         throw new IndexOutOfBoundsException();
+      }
+      if (len == 0)
+      {
+         return 0;
+      }
+      if (!buffer.hasRemaining())
+      {
+         return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+   }
+
+   /**
+    * @see java.io.InputStream#skip(long)
+    */
+   @Override
+   public long skip(long n)
+   {
+      int count = (int)Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+   }
+
+   /**
+    * @see java.io.InputStream#available()
+    */
+   @Override
+   public int available()
+   {
+      return buffer.remaining();
+   }
+
+   /**
+    * @see java.io.InputStream#markSupported()
+    */
+   @Override
+   public boolean markSupported()
+   {
+      return true;
+   }
+
+   /**
+    * @see java.io.InputStream#mark(int)
+    */
+   @Override
+   public void mark(int readlimit)
+   {
+      mark = buffer.position();
+   }
+
+   /**
+    * @see java.io.InputStream#reset()
+    */
+   @Override
+   public void reset()
+   {
+      buffer.position(mark);
+   }
+}
@@ -28,6 +28,8 @@ public class CheckoutRecord extends VssRecord
 
    public final static String SIGNATURE = "CF";
 
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
    private String user;
 
    private Date dateTime;
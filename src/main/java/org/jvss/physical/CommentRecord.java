@@ -26,6 +26,8 @@ public class CommentRecord extends VssRecord
 
    public final static String SIGNATURE = "MC";
 
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
    private String comment;
 
    /**
@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import org.jvss.physical.DeltaOperation.DeltaCommand;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reverse delta held in parallel arrays: the command, offset and length of
+ * each operation, the offset in the reconstructed file at which each
+ * operation starts, and one byte array holding the data of all
+ * {@link DeltaCommand#WriteLog} operations, which their offsets point into.
+ * <p>
+ * The operation covering a position of the reconstructed file is found by a
+ * binary search of the start offsets, so reading at random and merging deltas
+ * take time logarithmic in the number of operations per step instead of a
+ * walk from the first operation. Offsets into the successor are unsigned
+ * 32-bit values, as in delta records. Instances are immutable and
+ * thread-safe.
+ */
+public class CompactDelta
+{
+   private static final byte WRITE_LOG = (byte)DeltaCommand.WriteLog.getValue();
+
+   private final int count;
+
+   private final byte[] commands;
+
+   private final int[] offsets;
+
+   private final int[] lengths;
+
+   private final long[] starts;
+
+   private final byte[] log;
+
+   private CompactDelta(int count, byte[] commands, int[] offsets, int[] lengths, long[] starts, byte[] log)
+   {
+      this.count = count;
+      this.commands = commands;
+      this.offsets = offsets;
+      this.lengths = lengths;
+      this.starts = starts;
+      this.log = log;
+   }
+
+   /**
+    * @return a compact copy of the given operations
+    */
+   public static CompactDelta of(List<DeltaOperation> operations)
+   {
+      Builder builder = new Builder();
+      for (DeltaOperation operation : operations)
+      {
+         if (operation.getCommand() == DeltaCommand.WriteLog)
+         {
+            builder.writeLog(operation.getData(), 0, operation.getLength());
+         }
+         else if (operation.getCommand() == DeltaCommand.WriteSuccessor)
+         {
+            builder.writeSuccessor(operation.getOffset(), operation.getLength());
+         }
+      }
+      return builder.build();
+   }
+
+   /**
+    * Combines two consecutive reverse deltas into one that rebuilds the prior
+    * revision straight from the successor of the last one. Data is copied
+    * once into the log of the result; operations are not allocated.
+    * 
+    * @param last
+    *           the delta from the successor to the intermediate revision
+    * @param prior
+    *           the delta from the intermediate revision to the prior one
+    */
+   public static CompactDelta merge(CompactDelta last, CompactDelta prior)
+   {
+      Builder builder = new Builder(prior.count + last.count, prior.log.length);
+      for (int i = 0; i < prior.count; ++i)
+      {
+         if (prior.commands[i] == WRITE_LOG)
+         {
+            builder.writeLog(prior.log, prior.offsets[i], prior.lengths[i]);
+            continue;
+         }
+         long position = prior.getOffset(i);
+         int remaining = prior.lengths[i];
+         for (int j = last.find(position); j >= 0 && j < last.count && remaining > 0; ++j)
+         {
+            int within = (int)(position - last.starts[j]);
+            int length = (int)Math.min(remaining, last.starts[j + 1] - position);
+            if (last.commands[j] == WRITE_LOG)
+            {
+               builder.writeLog(last.log, last.offsets[j] + within, length);
+            }
+            else
+            {
+               builder.writeSuccessor(last.getOffset(j) + within, length);
+            }
+            position += length;
+            remaining -= length;
+         }
+      }
+      return builder.build();
+   }
+
+   /**
+    * @return the number of operations
+    */
+   public int size()
+   {
+      return count;
+   }
+
+   /**
+    * @return the length of the reconstructed file
+    */
+   public long length()
+   {
+      return starts[count];
+   }
+
+   /**
+    * @return the command of the given operation
+    */
+   public DeltaCommand getCommand(int index)
+   {
+      return DeltaCommand.valueOf(commands[index]);
+   }
+
+   /**
+    * @return the offset of the data of the given operation: in the successor
+    *         for {@link DeltaCommand#WriteSuccessor}, in {@link #getLog()}
+    *         for {@link DeltaCommand#WriteLog}
+    */
+   public long getOffset(int index)
+   {
+      return offsets[index] & 0xFFFFFFFFL;
+   }
+
+   /**
+    * @return the length of the given operation
+    */
+   public int getLength(int index)
+   {
+      return lengths[index];
+   }
+
+   /**
+    * @return the offset in the reconstructed file at which the given
+    *         operation starts
+    */
+   public long getStart(int index)
+   {
+      return starts[index];
+   }
+
+   /**
+    * @return the data of all log operations; must not be modified
+    */
+   public byte[] getLog()
+   {
+      return log;
+   }
+
+   /**
+    * @return the index of the operation covering the given offset of the
+    *         reconstructed file, or -1 if the offset is outside it
+    */
+   public int find(long position)
+   {
+      if (position < 0 || position >= starts[count])
+      {
+         return -1;
+      }
+      int low = 0;
+      int high = count - 1;
+      while (low < high)
+      {
+         int mid = (low + high + 1) >>> 1;
+         if (starts[mid] <= position)
+         {
+            low = mid;
+         }
+         else
+         {
+            high = mid - 1;
+         }
+      }
+      return low;
+   }
+
+   /**
+    * Copies bytes of the reconstructed file starting at the given offset.
+    * 
+    * @param successor
+    *           the revision the delta applies to
+    * @return the number of bytes copied, fewer than requested only at the end
+    *         of the file, or -1 if the offset is at or beyond the end
+    */
+   public int read(SegmentedBuffer successor, long position, byte[] buffer, int offset, int length)
+   {
+      int index = find(position);
+      if (index < 0)
+      {
+         return length == 0 || position < 0 ? 0 : -1;
+      }
+      int copied = 0;
+      for (; index < count && copied < length; ++index)
+      {
+         int within = (int)(position - starts[index]);
+         int n = (int)Math.min(length - copied, starts[index + 1] - position);
+         if (commands[index] == WRITE_LOG)
+         {
+            System.arraycopy(log, offsets[index] + within, buffer, offset + copied, n);
+         }
+         else
+         {
+            n = Math.max(0, successor.read(getOffset(index) + within, buffer, offset + copied, n));
+            if (n == 0)
+            {
+               break;
+            }
+         }
+         copied += n;
+         position += n;
+      }
+      return copied;
+   }
+
+   /**
+    * Writes the reconstructed file.
+    * 
+    * @param successor
+    *           the revision the delta applies to
+    */
+   public void apply(SegmentedBuffer successor, OutputStream output) throws IOException
+   {
+      byte[] buffer = new byte[(int)Math.min(64 * 1024, Math.max(1, length()))];
+      for (long position = 0; position < length();)
+      {
+         int n = read(successor, position, buffer, 0, buffer.length);
+         if (n <= 0)
+         {
+            throw new IOException("Unexpected end of current revision file");
+         }
+         output.write(buffer, 0, n);
+         position += n;
+      }
+      output.flush();
+   }
+
+   /**
+    * @return the operations as separate objects
+    */
+   public List<DeltaOperation> toOperations()
+   {
+      List<DeltaOperation> result = new ArrayList<DeltaOperation>(count);
+      for (int i = 0; i < count; ++i)
+      {
+         result.add(commands[i] == WRITE_LOG ? DeltaOperation.writeLog(log, offsets[i], lengths[i]) : DeltaOperation
+            .writeSuccessor(getOffset(i), lengths[i]));
+      }
+      return result;
+   }
+
+   public void dump(PrintStream writer)
+   {
+      for (DeltaOperation operation : toOperations())
+      {
+         operation.dump(writer);
+      }
+   }
+
+   /**
+    * Collects operations into a compact delta. Adjacent reads of consecutive
+    * successor bytes are joined into one operation.
+    */
+   public static class Builder
+   {
+      private int count;
+
+      private byte[] commands;
+
+      private int[] offsets;
+
+      private int[] lengths;
+
+      private long[] starts;
+
+      private byte[] log;
+
+      private int logLength;
+
+      public Builder()
+      {
+         this(8, 256);
+      }
+
+      public Builder(int expectedOperations, int expectedLogLength)
+      {
+         int capacity = Math.max(1, expectedOperations);
+         commands = new byte[capacity];
+         offsets = new int[capacity];
+         lengths = new int[capacity];
+         starts = new long[capacity + 1];
+         log = new byte[Math.max(16, expectedLogLength)];
+      }
+
+      public Builder writeLog(byte[] data, int offset, int length)
+      {
+         if (length > 0)
+         {
+            ensureLog(length);
+            System.arraycopy(data, offset, log, logLength, length);
+            add(WRITE_LOG, logLength, length);
+            logLength += length;
+         }
+         return this;
+      }
+
+      public Builder writeSuccessor(long offset, int length)
+      {
+         if (length > 0)
+         {
+            int last = count - 1;
+            if (last >= 0 && commands[last] != WRITE_LOG && (offsets[last] & 0xFFFFFFFFL) + lengths[last] == offset
+               && lengths[last] + length > 0)
+            {
+               lengths[last] += length;
+               starts[count] += length;
+            }
+            else
+            {
+               add((byte)DeltaCommand.WriteSuccessor.getValue(), (int)offset, length);
+            }
+         }
+         return this;
+      }
+
+      /**
+       * Reads the operations of a delta record up to its stop operation,
+       * copying log data straight from the record.
+       */
+      public Builder read(BufferReader reader)
+      {
+         while (true)
+         {
+            DeltaCommand command = DeltaCommand.valueOf(reader.readInt16());
+            if (command == DeltaCommand.Stop)
+            {
+               return this;
+            }
+            reader.skip(2); // unknown
+            long offset = reader.readInt32() & 0xFFFFFFFFL;
+            int length = reader.readInt32();
+            if (command == DeltaCommand.WriteLog)
+            {
+               ensureLog(length);
+               reader.readBytes(log, logLength, length);
+               add(WRITE_LOG, logLength, length);
+               logLength += length;
+            }
+            else
+            {
+               writeSuccessor(offset, length);
+            }
+         }
+      }
+
+      public CompactDelta build()
+      {
+         return new CompactDelta(count, Arrays.copyOf(commands, count), Arrays.copyOf(offsets, count), Arrays
+            .copyOf(lengths, count), Arrays.copyOf(starts, count + 1), Arrays.copyOf(log, logLength));
+      }
+
+      private void add(byte command, int offset, int length)
+      {
+         if (count == commands.length)
+         {
+            int capacity = count * 2;
+            commands = Arrays.copyOf(commands, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            starts = Arrays.copyOf(starts, capacity + 1);
+         }
+         commands[count] = command;
+         offsets[count] = offset;
+         lengths[count] = length;
+         starts[count + 1] = starts[count] + length;
+         ++count;
+      }
+
+      private void ensureLog(int length)
+      {
+         if (logLength + length > log.length)
+         {
+            log = Arrays.copyOf(log, Math.max(log.length * 2, logLength + length));
+         }
+      }
+   }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decides when record CRCs are verified.
+ * <p>
+ * In {@link Mode#Always} mode every record is checked as it is read, which is
+ * how record files have always behaved. The other modes skip the per-record
+ * check: {@link Mode#OncePerFile} checks every record of a file in one pass the
+ * first time the file is loaded and remembers the file once it has passed,
+ * {@link Mode#Deferred} runs the same pass on background threads and collects
+ * the errors for {@link #await()}, and {@link Mode#Off} never checks. A file
+ * that fails is checked again the next time it is loaded. A verifier is shared by
+ * all record files of a database and is safe for concurrent use.
+ */
+public class CrcVerifier
+{
+   public static enum Mode {
+      Always, OncePerFile, Deferred, Off
+   }
+
+   /**
+    * Verifier used by record files opened without one.
+    */
+   public static final CrcVerifier ALWAYS = new CrcVerifier(Mode.Always);
+
+   private final Mode mode;
+
+   private final Set<String> verifiedFiles = new HashSet<String>();
+
+   private final Set<String> queuedFiles = new HashSet<String>();
+
+   private final List<Future<?>> pending = new LinkedList<Future<?>>();
+
+   private final List<RecordCrcException> failures = new ArrayList<RecordCrcException>();
+
+   private ExecutorService executor;
+
+   public CrcVerifier(Mode mode)
+   {
+      this.mode = mode;
+   }
+
+   /**
+    * @return the mode
+    */
+   public Mode getMode()
+   {
+      return mode;
+   }
+
+   /**
+    * @return whether each record is checked as it is read
+    */
+   public boolean isPerRecord()
+   {
+      return mode == Mode.Always;
+   }
+
+   /**
+    * @return whether every record of the given file has been verified by
+    *         this verifier
+    */
+   public synchronized boolean isVerified(String filename)
+   {
+      return verifiedFiles.contains(filename);
+   }
+
+   /**
+    * Called when the contents of a record file have been loaded, before the
+    * file uses them.
+    *
+    * @param reader
+    *           the reader over the contents of the whole file
+    * @throws RecordCrcException
+    *            in {@link Mode#OncePerFile} mode, if a record of the file has
+    *            an invalid CRC
+    */
+   void fileLoaded(final VssRecordFile file, final BufferReader reader)
+   {
+      if (mode == Mode.Always || mode == Mode.Off)
+      {
+         return;
+      }
+      final String filename = file.filename();
+      if (mode == Mode.OncePerFile)
+      {
+         if (isVerified(filename))
+         {
+            return;
+         }
+         List<RecordCrcException> errors = file.verifyRecords(reader);
+         if (!errors.isEmpty())
+         {
+            throw errors.get(0);
+         }
+         synchronized (this)
+         {
+            verifiedFiles.add(filename);
+         }
+      }
+      else
+      {
+         synchronized (this)
+         {
+            if (verifiedFiles.contains(filename) || !queuedFiles.add(filename))
+            {
+               return;
+            }
+         }
+         Runnable task = new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               List<RecordCrcException> errors = null;
+               try
+               {
+                  errors = file.verifyRecords(reader);
+               }
+               finally
+               {
+                  synchronized (CrcVerifier.this)
+                  {
+                     // a file that could not be read is checked again on the next load
+                     queuedFiles.remove(filename);
+                     if (errors != null && errors.isEmpty())
+                     {
+                        verifiedFiles.add(filename);
+                     }
+                     else if (errors != null)
+                     {
+                        failures.addAll(errors);
+                     }
+                  }
+               }
+            }
+         };
+         synchronized (this)
+         {
+            for (Iterator<Future<?>> i = pending.iterator(); i.hasNext();)
+            {
+               if (i.next().isDone())
+               {
+                  i.remove();
+               }
+            }
+            pending.add(executor().submit(task));
+         }
+      }
+   }
+
+   /**
+    * Waits for all deferred verification submitted so far.
+    *
+    * @return the CRC errors found by deferred verification since the last
+    *         call
+    */
+   public List<RecordCrcException> await() throws InterruptedException
+   {
+      while (true)
+      {
+         Future<?> next;
+         synchronized (this)
+         {
+            if (pending.isEmpty())
+            {
+               List<RecordCrcException> result = new ArrayList<RecordCrcException>(failures);
+               failures.clear();
+               return result;
+            }
+            next = pending.remove(0);
+         }
+         try
+         {
+            next.get();
+         }
+         catch (ExecutionException e)
+         {
+            // anything other than a CRC error is reported by the regular read
+         }
+      }
+   }
+
+   /**
+    * Stops the background threads of {@link Mode#Deferred} mode once queued
+    * verification has finished.
+    */
+   public synchronized void shutdown()
+   {
+      if (executor != null)
+      {
+         executor.shutdown();
+         executor = null;
+      }
+   }
+
+   private synchronized ExecutorService executor()
+   {
+      if (executor == null)
+      {
+         executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+         {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+               Thread thread = new Thread(r, "crc-verifier");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      }
+      return executor;
+   }
+}
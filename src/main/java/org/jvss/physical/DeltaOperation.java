@@ -73,7 +73,7 @@ public class DeltaOperation
       return result;
    }
 
-   public static DeltaOperation writeSuccessor(int offset, int length)
+   public static DeltaOperation writeSuccessor(long offset, int length)
    {
       DeltaOperation result = new DeltaOperation();
       result.command = DeltaCommand.WriteSuccessor;
@@ -84,7 +84,7 @@ public class DeltaOperation
 
    private DeltaCommand command;
 
-   private int offset; // meaningful for WriteSuccessor only
+   private long offset; // meaningful for WriteSuccessor only
 
    private int length;
 
@@ -143,7 +143,7 @@ public class DeltaOperation
    /**
     * @return the offset
     */
-   public int getOffset()
+   public long getOffset()
    {
       return offset;
    }
@@ -152,7 +152,8 @@ public class DeltaOperation
    {
       command = DeltaCommand.valueOf(reader.readInt16());
       reader.skip(2); // unknown
-      offset = reader.readInt32();
+      // offsets into the successor are unsigned, so files may exceed 2GB
+      offset = reader.readInt32() & 0xFFFFFFFFL;
       length = reader.readInt32();
       if (command == DeltaCommand.WriteLog)
       {
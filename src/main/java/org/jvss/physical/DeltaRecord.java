@@ -15,11 +15,8 @@
  */
 package org.jvss.physical;
 
-import org.jvss.physical.DeltaOperation.DeltaCommand;
-
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -30,7 +27,9 @@ public class DeltaRecord extends VssRecord
 
    public final static String SIGNATURE = "FD";
 
-   private final List<DeltaOperation> operations = new LinkedList<DeltaOperation>();
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
+   private CompactDelta delta;
 
    /**
     * @see org.jvss.physical.VssRecord#getSignature()
@@ -44,9 +43,17 @@ public class DeltaRecord extends VssRecord
    /**
     * @return the operations
     */
+   public CompactDelta getDelta()
+   {
+      return delta;
+   }
+
+   /**
+    * @return the operations as separate objects
+    */
    public List<DeltaOperation> getOperations()
    {
-      return operations;
+      return delta.toOperations();
    }
 
    /**
@@ -59,16 +66,7 @@ public class DeltaRecord extends VssRecord
    {
       super.read(reader, header);
 
-      while (true)
-      {
-         DeltaOperation operation = new DeltaOperation();
-         operation.read(reader);
-         if (operation.getCommand() == DeltaCommand.Stop)
-         {
-            break;
-         }
-         operations.add(operation);
-      }
+      delta = new CompactDelta.Builder(reader.getRemaining() / 12, reader.getRemaining()).read(reader).build();
    }
 
    /**
@@ -77,9 +75,6 @@ public class DeltaRecord extends VssRecord
    @Override
    public void dump(PrintStream writer) throws IOException
    {
-      for (DeltaOperation operation : operations)
-      {
-         operation.dump(writer);
-      }
+      delta.dump(writer);
    }
 }
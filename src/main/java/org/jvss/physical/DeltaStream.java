@@ -15,34 +15,114 @@
  */
 package org.jvss.physical;
 
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
-
 import org.jvss.git.IoUtil;
-import org.jvss.physical.DeltaSimulator.FromLogCallback;
-import org.jvss.physical.DeltaSimulator.FromSuccessorCallback;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
  * Provides a seekable input stream over a file revision based on the latest
  * revision content and a set of reverse-delta operations.
+ * <p>
+ * Bytes are produced on demand: log data is copied from the delta and
+ * successor ranges are copied straight from a positional view of the latest
+ * revision, usually a mapping of the data file. Reading any range of the
+ * revision therefore takes a binary search of the delta plus the bytes
+ * copied, and no buffer of the size of the file. Mark and reset are
+ * supported at any position.
  */
 public class DeltaStream extends InputStream
 {
+   private final SegmentedBuffer base;
 
-   private final ByteArrayInputStream baseStream;
+   private final CompactDelta delta;
 
-   private final DeltaSimulator simulator;
+   private long position;
 
-   private int length = -1;
+   private long mark;
 
+   /**
+    * Reads the latest revision from the given stream into memory first; use
+    * {@link #DeltaStream(SegmentedBuffer, CompactDelta)} for large files.
+    */
    public DeltaStream(InputStream stream, List<DeltaOperation> operations)
    {
-      baseStream = new ByteArrayInputStream(IoUtil.readFile(stream));
-      simulator = new DeltaSimulator(operations);
+      this(SegmentedBuffer.wrap(ByteBuffer.wrap(IoUtil.readFile(stream))), operations);
+   }
+
+   public DeltaStream(SegmentedBuffer base, List<DeltaOperation> operations)
+   {
+      this(base, CompactDelta.of(operations));
+   }
+
+   /**
+    * Reads the latest revision through positional reads of the given buffer,
+    * which may be a mapping of a file too large for the heap.
+    */
+   public DeltaStream(SegmentedBuffer base, CompactDelta delta)
+   {
+      this.base = base;
+      this.delta = delta;
+   }
+
+   /**
+    * @return the total length of the revision
+    */
+   public long length()
+   {
+      return delta.length();
+   }
+
+   /**
+    * @return the offset in the revision of the next byte to be read
+    */
+   public long getPosition()
+   {
+      return position;
+   }
+
+   /**
+    * Moves to the given offset of the revision. Offsets beyond the end are
+    * allowed and read as the end of the stream.
+    */
+   public void seek(long offset)
+   {
+      if (offset < 0)
+      {
+         throw new IllegalArgumentException("Negative offset " + offset);
+      }
+      position = offset;
+   }
+
+   /**
+    * Reads bytes at the given offset of the revision, without moving the
+    * position of the stream.
+    * 
+    * @return the number of bytes read, or -1 if the offset is at or beyond
+    *         the end of the revision
+    */
+   public int read(long offset, byte[] buffer, int off, int len) throws IOException
+   {
+      if (off < 0 || len < 0 || len > buffer.length - off)
+      {
+         throw new IndexOutOfBoundsException();
+      }
+      if (offset < 0)
+      {
+         throw new IllegalArgumentException("Negative offset " + offset);
+      }
+      if (len == 0)
+      {
+         return 0;
+      }
+      int count = delta.read(base, offset, buffer, off, len);
+      if (count == 0)
+      {
+         throw new IOException("Unexpected end of current revision file");
+      }
+      return count;
    }
 
    /**
@@ -51,64 +131,68 @@ public class DeltaStream extends InputStream
    @Override
    public int read() throws IOException
    {
-      throw new NotImplementedException();
+      byte[] b = new byte[1];
+      return read(b, 0, 1) > 0 ? b[0] & 0xFF : -1;
    }
 
    /**
-    * @see java.io.InputStream#available()
+    * @see java.io.InputStream#read(byte[], int, int)
     */
    @Override
-   public int available() throws IOException
+   public int read(byte[] buffer, int offset, int count) throws IOException
    {
-      if (length < 0)
+      int n = read(position, buffer, offset, count);
+      if (n > 0)
       {
-         length = 0;
-         for (DeltaOperation operation : simulator.getOperations())
-         {
-            length += operation.getLength();
-         }
+         position += n;
       }
-      return length;
+      return n;
    }
 
    /**
-    * @see java.io.InputStream#read(byte[], int, int)
+    * @see java.io.InputStream#skip(long)
     */
    @Override
-   public int read(final byte[] buffer, int offset, int count) throws IOException
+   public long skip(long n)
    {
-      final int[] localVar = new int[]{0, offset, count}; //bytesRead , offset, count
-      //final int[] bytesRead = new int[]{0};
+      long skipped = Math.max(0, Math.min(n, delta.length() - position));
+      position += skipped;
+      return skipped;
+   }
 
-      simulator.read(count, new FromLogCallback()
-      {
+   /**
+    * @see java.io.InputStream#available()
+    */
+   @Override
+   public int available()
+   {
+      return (int)Math.max(0, Math.min(delta.length() - position, Integer.MAX_VALUE));
+   }
 
-         @Override
-         public int fromLog(byte[] opData, int opOffset, int opCount)
-         {
-            System.arraycopy(opData, opOffset, buffer, localVar[1], opCount);
-            localVar[1] += opCount;
-            localVar[2] -= opCount;
-            localVar[0] += opCount;
-            return opCount;
-         }
-
-      }, new FromSuccessorCallback()
-      {
+   /**
+    * @see java.io.InputStream#markSupported()
+    */
+   @Override
+   public boolean markSupported()
+   {
+      return true;
+   }
 
-         @Override
-         public int fromSuccessor(int opOffset, int opCount)
-         {
-            baseStream.reset();
-            baseStream.skip(opOffset); //TODO check this  baseStream.Seek(opOffset, SeekOrigin.Begin);
-            int opBytesRead = baseStream.read(buffer, localVar[1], opCount);
-            localVar[1] += opBytesRead;
-            localVar[2] -= opBytesRead;
-            localVar[0] += opBytesRead;
-            return opBytesRead;
-         }
-      });
-
-      return localVar[0];//simulator.read(buffer, offset, count);//bytesRead[0];
+   /**
+    * @see java.io.InputStream#mark(int)
+    */
+   @Override
+   public void mark(int readlimit)
+   {
+      mark = position;
+   }
+
+   /**
+    * @see java.io.InputStream#reset()
+    */
+   @Override
+   public void reset()
+   {
+      position = mark;
    }
 }
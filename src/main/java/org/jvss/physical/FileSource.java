@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Source of the bytes of database files. Record files read their contents
+ * through a file source, so that reads can be prefetched, throttled or
+ * simulated without touching the parsing code.
+ * <p>
+ * Buffers returned are little-endian and must not be modified by the caller.
+ * Implementations must be thread-safe.
+ */
+public interface FileSource
+{
+   /**
+    * @return whether the file exists
+    */
+   boolean exists(String path);
+
+   /**
+    * @return the size of the file in bytes
+    */
+   long length(String path) throws IOException;
+
+   /**
+    * @return the time the file was last modified, in milliseconds since the
+    *         epoch, or 0 if it is not known
+    */
+   long lastModified(String path) throws IOException;
+
+   /**
+    * @return the whole contents of the file
+    */
+   ByteBuffer read(String path) throws IOException;
+
+   /**
+    * @return up to the given number of bytes starting at the given position;
+    *         fewer if the file ends first
+    */
+   ByteBuffer read(String path, long position, int length) throws IOException;
+
+   /**
+    * @return a stream over the contents of the file, for files that are read
+    *         once from start to end
+    */
+   InputStream open(String path) throws IOException;
+
+   /**
+    * @return the contents of the file for random access by long offsets, for
+    *         files too large to be read into a single buffer
+    */
+   SegmentedBuffer map(String path) throws IOException;
+}
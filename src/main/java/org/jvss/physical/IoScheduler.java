@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Paces the reads of database files to a global rate, giving metadata reads
+ * precedence over file contents.
+ * <p>
+ * The scheduler is a token bucket refilled at the configured number of bytes
+ * per second and holding at most one burst. A read takes as many tokens as it
+ * is about to transfer; a read larger than the bucket waits until the bucket is full
+ * and leaves it in debt, so the average rate holds whatever the read sizes.
+ * Reads of the {@link Lane#Content} lane wait while any {@link Lane#Metadata}
+ * read is waiting, so bulk contents cannot starve the item files an analysis
+ * is blocked on. With a rate of 0 nothing waits and the scheduler only counts
+ * the bytes. The scheduler is thread-safe and shared by all sources reading
+ * through it.
+ */
+public class IoScheduler
+{
+   public static enum Lane {
+      /**
+       * Item files, project entry files and the name file.
+       */
+      Metadata,
+
+      /**
+       * Data files read for revision contents.
+       */
+      Content
+   }
+
+   private final long bytesPerSecond;
+
+   private final long burst;
+
+   private final long startTime = System.nanoTime();
+
+   private double tokens;
+
+   private long refillTime = startTime;
+
+   private final int[] waiting = new int[Lane.values().length];
+
+   private final long[] bytes = new long[Lane.values().length];
+
+   private final long[] reads = new long[Lane.values().length];
+
+   private final long[] waitNanos = new long[Lane.values().length];
+
+   /**
+    * @param bytesPerSecond
+    *           the rate all reads together may not exceed; 0 for no limit
+    */
+   public IoScheduler(long bytesPerSecond)
+   {
+      this(bytesPerSecond, Math.max(bytesPerSecond, 64 * 1024));
+   }
+
+   /**
+    * @param bytesPerSecond
+    *           the rate all reads together may not exceed; 0 for no limit
+    * @param burst
+    *           the number of bytes that may be read at once after a pause
+    */
+   public IoScheduler(long bytesPerSecond, long burst)
+   {
+      if (bytesPerSecond < 0 || burst <= 0)
+      {
+         throw new IllegalArgumentException("Invalid rate " + bytesPerSecond + " or burst " + burst);
+      }
+      this.bytesPerSecond = bytesPerSecond;
+      this.burst = burst;
+      this.tokens = burst;
+   }
+
+   /**
+    * Accounts for the given number of bytes read in the given lane, waiting
+    * until the rate allows it.
+    * 
+    * @throws InterruptedIOException
+    *            if the thread is interrupted while waiting
+    */
+   public void acquire(Lane lane, long count) throws InterruptedIOException
+   {
+      if (count <= 0)
+      {
+         return;
+      }
+      int index = lane.ordinal();
+      long start = System.nanoTime();
+      synchronized (this)
+      {
+         if (bytesPerSecond > 0)
+         {
+            ++waiting[index];
+            try
+            {
+               long needed = Math.min(count, burst);
+               while (true)
+               {
+                  refill();
+                  boolean yield = lane == Lane.Content && waiting[Lane.Metadata.ordinal()] > 0;
+                  if (!yield && tokens >= needed)
+                  {
+                     tokens -= count;
+                     break;
+                  }
+                  long millis = yield ? 10 : (long)Math.ceil((needed - tokens) * 1000 / bytesPerSecond);
+                  wait(Math.max(1, millis));
+               }
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+               throw new InterruptedIOException(e.getMessage());
+            }
+            finally
+            {
+               --waiting[index];
+               notifyAll();
+            }
+         }
+         bytes[index] += count;
+         ++reads[index];
+         waitNanos[index] += System.nanoTime() - start;
+      }
+   }
+
+   /**
+    * @return the rate limit in bytes per second, or 0 if there is none
+    */
+   public long getBytesPerSecond()
+   {
+      return bytesPerSecond;
+   }
+
+   /**
+    * @return the burst
+    */
+   public long getBurst()
+   {
+      return burst;
+   }
+
+   /**
+    * @return the number of bytes read in the given lane
+    */
+   public synchronized long getBytes(Lane lane)
+   {
+      return bytes[lane.ordinal()];
+   }
+
+   /**
+    * @return the number of reads in the given lane
+    */
+   public synchronized long getReads(Lane lane)
+   {
+      return reads[lane.ordinal()];
+   }
+
+   /**
+    * @return the total time reads in the given lane have waited, in
+    *         milliseconds
+    */
+   public synchronized long getWaitMillis(Lane lane)
+   {
+      return waitNanos[lane.ordinal()] / 1000000;
+   }
+
+   /**
+    * @return the average rate achieved by all lanes since the scheduler was
+    *         created, in bytes per second
+    */
+   public synchronized double getThroughput()
+   {
+      long total = 0;
+      for (long laneBytes : bytes)
+      {
+         total += laneBytes;
+      }
+      long elapsed = System.nanoTime() - startTime;
+      return elapsed > 0 ? total * 1e9 / elapsed : 0;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      StringBuilder buf = new StringBuilder();
+      buf.append(String.format("%.0f bytes/s", getThroughput()));
+      for (Lane lane : Lane.values())
+      {
+         int index = lane.ordinal();
+         buf.append(String.format(", %s: %d bytes in %d reads, %d ms waiting", lane, bytes[index], reads[index],
+            waitNanos[index] / 1000000));
+      }
+      return buf.toString();
+   }
+
+   private void refill()
+   {
+      long now = System.nanoTime();
+      tokens = Math.min(burst, tokens + (now - refillTime) * bytesPerSecond / 1e9);
+      refillTime = now;
+   }
+}
@@ -29,6 +29,7 @@ import org.jvss.physical.RevisionRecord.MoveRevisionRecord;
 import org.jvss.physical.RevisionRecord.RenameRevisionRecord;
 import org.jvss.physical.RevisionRecord.ShareRevisionRecord;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -37,11 +38,100 @@ import java.util.List;
  */
 public class ItemFile extends VssRecordFile
 {
+   /**
+    * Length of the file signature, type, version and reserved bytes preceding
+    * the header record.
+    */
+   private static final int FILE_HEADER_LENGTH = 0x20 + 2 + 2 + 16;
+
+   /**
+    * Bytes read up front in header-only mode; enough for the header record of
+    * either item type, so a single read is normally sufficient.
+    */
+   private static final int HEADER_READ_LENGTH = 1024;
+
+   /**
+    * Largest header record accepted before falling back to a full read.
+    */
+   private static final int MAX_HEADER_LENGTH = 64 * 1024;
+
+   /**
+    * Offset of the previous delta field within an edit revision record body.
+    */
+   private static final int PREV_DELTA_OFFSET = 88;
+
    private final ItemHeaderRecord header;
 
+   /**
+    * Revision index, in file order: record offsets, revision numbers, actions
+    * and, for edit revisions, the offset of the previous delta record.
+    */
+   private volatile int[] revisionOffsets;
+
+   private short[] revisionNumbers;
+
+   private byte[] revisionActions;
+
+   private int[] prevDeltaOffsets;
+
+   private boolean contiguousRevisions;
+
    public ItemFile(String filename, String encoding)
    {
-      super(filename, encoding);
+      this(filename, encoding, false);
+   }
+
+   /**
+    * @param headerOnly
+    *           if true, only the file signature and header record are read
+    *           now; the rest of the file is read on first access to any other
+    *           record
+    */
+   public ItemFile(String filename, String encoding, boolean headerOnly)
+   {
+      this(filename, encoding, CrcVerifier.ALWAYS, LocalFileSource.INSTANCE, headerOnly);
+   }
+
+   /**
+    * @param verifier
+    *           decides when record CRCs are checked
+    * @param source
+    *           where the file contents are read from
+    * @param headerOnly
+    *           if true, only the file signature and header record are read
+    *           now; the rest of the file is read on first access to any other
+    *           record
+    */
+   public ItemFile(String filename, String encoding, CrcVerifier verifier, FileSource source, boolean headerOnly)
+   {
+      super(filename, encoding, verifier, source, !headerOnly);
+      header = readHeader(headerOnly ? headerReader() : reader());
+   }
+
+   private BufferReader headerReader()
+   {
+      BufferReader headerReader = prefixReader(HEADER_READ_LENGTH);
+      int available = headerReader.getRemaining();
+      if (available >= FILE_HEADER_LENGTH + 4)
+      {
+         headerReader.setOffset(FILE_HEADER_LENGTH);
+         int required = FILE_HEADER_LENGTH + RecordHeader.LENGTH + headerReader.readInt32();
+         if (required > MAX_HEADER_LENGTH || required < 0)
+         {
+            // let the regular parsing report whatever is wrong with the file
+            return reader();
+         }
+         if (required > available)
+         {
+            headerReader = prefixReader(required);
+         }
+         headerReader.setOffset(0);
+      }
+      return headerReader;
+   }
+
+   private ItemHeaderRecord readHeader(BufferReader reader)
+   {
       try
       {
          String fileSig = reader.readString(0x20);
@@ -59,6 +149,7 @@ public class ItemFile extends VssRecordFile
 
          reader.skip(16); // reserved; always 0
 
+         ItemHeaderRecord header;
          if (fileType == ItemType.PROJECT)
          {
             header = new ProjectHeaderRecord();
@@ -68,11 +159,12 @@ public class ItemFile extends VssRecordFile
             header = new FileHeaderRecord();
          }
 
-         readRecord(header);
+         readRecord(reader, header);
          if (header.getItemType() != fileType)
          {
             throw new BadHeaderException("Header record type mismatch");
          }
+         return header;
       }
       catch (EndOfBufferException e)
       {
@@ -112,8 +204,8 @@ public class ItemFile extends VssRecordFile
 
    public RevisionRecord GetNextRevision(RevisionRecord revision)
    {
-      reader.setOffset(revision.getHeader().getOffset() + revision.getHeader().getLength() + RecordHeader.LENGTH);
-      return getNextRecord(new RevisionRecordCreator(), true);
+      int offset = revision.getHeader().getOffset() + revision.getHeader().getLength() + RecordHeader.LENGTH;
+      return getNextRecord(readerAt(offset), new RevisionRecordCreator(), true);
    }
 
    public RevisionRecord GetLastRevision()
@@ -148,6 +240,231 @@ public class ItemFile extends VssRecordFile
       return null;
    }
 
+   /**
+    * @return the number of revision records in this file
+    */
+   public int getIndexedRevisionCount()
+   {
+      return revisionIndex().length;
+   }
+
+   /**
+    * @return the position in the revision index of the given version, or of
+    *         the first later version if the version itself is not present
+    */
+   public int getRevisionIndex(int version)
+   {
+      int[] offsets = revisionIndex();
+      if (offsets.length == 0)
+      {
+         return 0;
+      }
+      if (contiguousRevisions)
+      {
+         return Math.max(0, Math.min(version - revisionNumbers[0], offsets.length));
+      }
+      int low = 0;
+      int high = offsets.length;
+      while (low < high)
+      {
+         int mid = (low + high) >>> 1;
+         if (revisionNumbers[mid] < version)
+         {
+            low = mid + 1;
+         }
+         else
+         {
+            high = mid;
+         }
+      }
+      return low;
+   }
+
+   public int getRevisionNumber(int index)
+   {
+      revisionIndex();
+      return revisionNumbers[index];
+   }
+
+   public Action getRevisionAction(int index)
+   {
+      revisionIndex();
+      return Action.valueOf(revisionActions[index]);
+   }
+
+   public int getRevisionOffset(int index)
+   {
+      return revisionIndex()[index];
+   }
+
+   public RevisionRecord getRevisionAt(int index)
+   {
+      return readRevision(revisionIndex()[index]);
+   }
+
+   /**
+    * Opens a view of the revision at the given index, reading only its record
+    * header; the record CRC is checked as if the record were read.
+    */
+   public RevisionView getRevisionView(int index)
+   {
+      BufferReader reader = readerAt(revisionIndex()[index]);
+      RecordHeader recordHeader = new RecordHeader();
+      try
+      {
+         recordHeader.Read(reader);
+      }
+      catch (EndOfBufferException e)
+      {
+         throw new RecordTruncatedException(e.getLocalizedMessage());
+      }
+      checkCrc(recordHeader);
+      recordHeader.CheckSignature(RevisionRecord.SIGNATURE);
+      return new RevisionView(this, reader, recordHeader);
+   }
+
+   RevisionRecord readRevision(int offset)
+   {
+      return getRecord(new RevisionRecordCreator(), false, offset);
+   }
+
+   /**
+    * @return the delta leading from the revision at the given index to its
+    *         predecessor, or null if it has none
+    */
+   public DeltaRecord getPreviousDeltaAt(int index)
+   {
+      revisionIndex();
+      if (prevDeltaOffsets[index] > 0)
+      {
+         DeltaRecord record = new DeltaRecord();
+         ReadRecord(record, prevDeltaOffsets[index]);
+         return record;
+      }
+      return null;
+   }
+
+   /**
+    * Builds the revision index on first use by following the previous revision
+    * chain back from the last revision. Only the fixed fields needed by the
+    * index are decoded. The other index arrays are assigned before
+    * {@link #revisionOffsets}, so they are visible to any thread that sees it.
+    */
+   private int[] revisionIndex()
+   {
+      int[] result = revisionOffsets;
+      if (result == null)
+      {
+         synchronized (this)
+         {
+            result = revisionOffsets;
+            if (result == null)
+            {
+               result = revisionOffsets = buildRevisionIndex();
+            }
+         }
+      }
+      return result;
+   }
+
+   private int[] buildRevisionIndex()
+   {
+      BufferReader reader = reader().duplicate();
+      int capacity = Math.max(header.getRevisions(), 1);
+      int[] offsets = new int[capacity];
+      short[] numbers = new short[capacity];
+      byte[] actions = new byte[capacity];
+      int[] deltas = new int[capacity];
+      int count = 0;
+      int offset = header.getLastRevOffset();
+      while (offset > 0)
+      {
+         if (count == offsets.length)
+         {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            numbers = Arrays.copyOf(numbers, count * 2);
+            actions = Arrays.copyOf(actions, count * 2);
+            deltas = Arrays.copyOf(deltas, count * 2);
+         }
+         try
+         {
+            reader.setOffset(offset + 4);
+            if (reader.readInt16() != RevisionRecord.SIGNATURE_CODE)
+            {
+               throw new RecordNotFoundException(String.format("Expected revision record at offset %06X in %s",
+                  offset, filename()));
+            }
+            reader.skip(2); // CRC
+            int prevOffset = reader.readInt32();
+            Action action = Action.valueOf(reader.readInt16());
+            offsets[count] = offset;
+            actions[count] = (byte)action.getValue();
+            numbers[count] = reader.readInt16();
+            if (action == Action.EditFile)
+            {
+               reader.setOffset(offset + RecordHeader.LENGTH + PREV_DELTA_OFFSET);
+               deltas[count] = reader.readInt32();
+            }
+            ++count;
+            if (prevOffset >= offset)
+            {
+               throw new RecordNotFoundException(String.format("Invalid previous revision offset %06X at %06X in %s",
+                  prevOffset, offset, filename()));
+            }
+            offset = prevOffset;
+         }
+         catch (EndOfBufferException e)
+         {
+            throw new RecordTruncatedException(e.getLocalizedMessage());
+         }
+      }
+
+      // the chain was followed backwards; store it in file order
+      revisionNumbers = new short[count];
+      revisionActions = new byte[count];
+      prevDeltaOffsets = new int[count];
+      int[] ordered = new int[count];
+      boolean contiguous = true;
+      for (int i = 0; i < count; ++i)
+      {
+         int j = count - 1 - i;
+         ordered[i] = offsets[j];
+         revisionNumbers[i] = numbers[j];
+         revisionActions[i] = actions[j];
+         prevDeltaOffsets[i] = deltas[j];
+         contiguous &= revisionNumbers[i] == revisionNumbers[0] + i;
+      }
+      contiguousRevisions = contiguous;
+      return ordered;
+   }
+
+   /**
+    * @see org.jvss.physical.VssRecordFile#headerOffset()
+    */
+   @Override
+   protected int headerOffset()
+   {
+      return FILE_HEADER_LENGTH;
+   }
+
+   /**
+    * @see org.jvss.physical.VssRecordFile#firstRecordOffset()
+    */
+   @Override
+   protected int firstRecordOffset()
+   {
+      return header.getHeader().getOffset() + RecordHeader.LENGTH + header.getHeader().getLength();
+   }
+
+   /**
+    * @see org.jvss.physical.VssRecordFile#creator()
+    */
+   @Override
+   protected RecordCreator<? extends VssRecord> creator()
+   {
+      return new VssRecordCreator();
+   }
+
    public List<String> GetProjects()
    {
       LinkedList<String> result = new LinkedList<String>();
@@ -179,27 +496,28 @@ public class ItemFile extends VssRecordFile
       @Override
       public VssRecord createRecord(BufferReader reader, RecordHeader header)
       {
-         if (RevisionRecord.SIGNATURE.equals(header.getSignature()))
+         short signature = header.getSignatureCode();
+         if (signature == RevisionRecord.SIGNATURE_CODE)
          {
             return new RevisionRecordCreator().createRecord(reader, header);
          }
-         else if (CommentRecord.SIGNATURE.equals(header.getSignature()))
+         else if (signature == CommentRecord.SIGNATURE_CODE)
          {
             return new CommentRecord();
          }
-         else if (CheckoutRecord.SIGNATURE.equals(header.getSignature()))
+         else if (signature == CheckoutRecord.SIGNATURE_CODE)
          {
             return new CheckoutRecord();
          }
-         else if (ProjectRecord.SIGNATURE.equals(header.getSignature()))
+         else if (signature == ProjectRecord.SIGNATURE_CODE)
          {
             return new ProjectRecord();
          }
-         else if (BranchRecord.SIGNATURE.equals(header.getSignature()))
+         else if (signature == BranchRecord.SIGNATURE_CODE)
          {
             return new BranchRecord();
          }
-         else if (DeltaRecord.SIGNATURE.equals(header.getSignature()))
+         else if (signature == DeltaRecord.SIGNATURE_CODE)
          {
             return new DeltaRecord();
          }
@@ -218,7 +536,7 @@ public class ItemFile extends VssRecordFile
       @Override
       public RevisionRecord createRecord(BufferReader reader, RecordHeader header)
       {
-         if (!header.getSignature().equals(RevisionRecord.SIGNATURE))
+         if (header.getSignatureCode() != RevisionRecord.SIGNATURE_CODE)
          {
             return null;
          }
@@ -57,6 +57,8 @@ public class ItemHeaderRecord extends VssRecord
 
    public final static String SIGNATURE = "DH";
 
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
    protected ItemType itemType;
 
    protected int revisions;
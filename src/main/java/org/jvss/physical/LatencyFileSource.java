@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Delays every operation of another file source by a fixed time, to reproduce
+ * the behaviour of a high-latency network share on a local disk.
+ */
+public class LatencyFileSource implements FileSource
+{
+   private final FileSource delegate;
+
+   private final long latencyMillis;
+
+   /**
+    * @param latencyMillis
+    *           the delay added to each operation, in milliseconds
+    */
+   public LatencyFileSource(FileSource delegate, long latencyMillis)
+   {
+      this.delegate = delegate;
+      this.latencyMillis = latencyMillis;
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#exists(java.lang.String)
+    */
+   @Override
+   public boolean exists(String path)
+   {
+      try
+      {
+         delay();
+      }
+      catch (InterruptedIOException e)
+      {
+         // keep the interrupt for the caller; the answer is still valid
+      }
+      return delegate.exists(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#length(java.lang.String)
+    */
+   @Override
+   public long length(String path) throws IOException
+   {
+      delay();
+      return delegate.length(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#lastModified(java.lang.String)
+    */
+   @Override
+   public long lastModified(String path) throws IOException
+   {
+      delay();
+      return delegate.lastModified(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String)
+    */
+   @Override
+   public ByteBuffer read(String path) throws IOException
+   {
+      delay();
+      return delegate.read(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String, long, int)
+    */
+   @Override
+   public ByteBuffer read(String path, long position, int length) throws IOException
+   {
+      delay();
+      return delegate.read(path, position, length);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#open(java.lang.String)
+    */
+   @Override
+   public InputStream open(String path) throws IOException
+   {
+      delay();
+      return delegate.open(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#map(java.lang.String)
+    */
+   @Override
+   public SegmentedBuffer map(String path) throws IOException
+   {
+      delay();
+      return delegate.map(path);
+   }
+
+   private void delay() throws InterruptedIOException
+   {
+      try
+      {
+         Thread.sleep(latencyMillis);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException(e.getMessage());
+      }
+   }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Reads files from the local file system.
+ */
+public class LocalFileSource implements FileSource
+{
+   public static final LocalFileSource INSTANCE = new LocalFileSource();
+
+   /**
+    * Files up to this size are read into the heap instead of being mapped.
+    */
+   private static final int MAP_THRESHOLD = 16 * 1024;
+
+   /**
+    * @see org.jvss.physical.FileSource#exists(java.lang.String)
+    */
+   @Override
+   public boolean exists(String path)
+   {
+      return new File(path).exists();
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#length(java.lang.String)
+    */
+   @Override
+   public long length(String path) throws IOException
+   {
+      File file = new File(path);
+      if (!file.exists())
+      {
+         throw new FileNotFoundException(path);
+      }
+      return file.length();
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#lastModified(java.lang.String)
+    */
+   @Override
+   public long lastModified(String path) throws IOException
+   {
+      File file = new File(path);
+      if (!file.exists())
+      {
+         throw new FileNotFoundException(path);
+      }
+      return file.lastModified();
+   }
+
+   /**
+    * Loads the file contents without intermediate copies. Small files are read
+    * straight into a heap buffer, since mapping them costs more than reading;
+    * larger files are memory-mapped and parsed in place.
+    * 
+    * @see org.jvss.physical.FileSource#read(java.lang.String)
+    */
+   @Override
+   public ByteBuffer read(String path) throws IOException
+   {
+      FileInputStream fin = new FileInputStream(path);
+      try
+      {
+         FileChannel ch = fin.getChannel();
+         long length = ch.size();
+         if (length > Integer.MAX_VALUE)
+         {
+            throw new IOException("File is too large to be read into one buffer: " + path + " (" + length
+               + " bytes)");
+         }
+         int size = (int)length;
+         if (size > MAP_THRESHOLD)
+         {
+            return ch.map(MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+         }
+         ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+         while (buf.hasRemaining())
+         {
+            if (ch.read(buf) < 0)
+            {
+               break;
+            }
+         }
+         buf.flip();
+         return buf;
+      }
+      finally
+      {
+         fin.close();
+      }
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String, long, int)
+    */
+   @Override
+   public ByteBuffer read(String path, long position, int length) throws IOException
+   {
+      ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+      FileInputStream fin = new FileInputStream(path);
+      try
+      {
+         FileChannel ch = fin.getChannel();
+         while (buf.hasRemaining())
+         {
+            if (ch.read(buf, position + buf.position()) < 0)
+            {
+               break;
+            }
+         }
+      }
+      finally
+      {
+         fin.close();
+      }
+      buf.flip();
+      return buf;
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#open(java.lang.String)
+    */
+   @Override
+   public InputStream open(String path) throws IOException
+   {
+      return new FileInputStream(path);
+   }
+
+   /**
+    * Small files are read into the heap; anything larger is mapped in
+    * segments, so files over 2GB can be read too.
+    * 
+    * @see org.jvss.physical.FileSource#map(java.lang.String)
+    */
+   @Override
+   public SegmentedBuffer map(String path) throws IOException
+   {
+      FileInputStream fin = new FileInputStream(path);
+      try
+      {
+         FileChannel ch = fin.getChannel();
+         long size = ch.size();
+         if (size <= MAP_THRESHOLD)
+         {
+            return SegmentedBuffer.wrap(read(path));
+         }
+         return SegmentedBuffer.map(ch, 0, size);
+      }
+      finally
+      {
+         fin.close();
+      }
+   }
+}
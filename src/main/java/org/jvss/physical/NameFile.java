@@ -25,6 +25,8 @@ public class NameFile extends VssRecordFile
 {
    private final NameHeaderRecord header = new NameHeaderRecord();
 
+   private volatile NameIndex index;
+
    public NameHeaderRecord getHeader()
    {
       return header;
@@ -32,21 +34,77 @@ public class NameFile extends VssRecordFile
 
    public NameFile(String filename, String encoding)
    {
-      super(filename, encoding);
+      this(filename, encoding, CrcVerifier.ALWAYS, LocalFileSource.INSTANCE);
+   }
+
+   public NameFile(String filename, String encoding, CrcVerifier verifier, FileSource source)
+   {
+      super(filename, encoding, verifier, source, true);
       readRecord(header);
    }
 
    public NameRecord GetName(int offset)
    {
-      reader.setOffset(offset);
       NameRecord record = new NameRecord();
-      readRecord(record);
+      readRecord(readerAt(offset), record);
       return record;
    }
 
+   /**
+    * @return the index of all name records in this file, built on first use
+    */
+   public NameIndex getIndex()
+   {
+      NameIndex result = index;
+      if (result == null)
+      {
+         synchronized (this)
+         {
+            result = index;
+            if (result == null)
+            {
+               index = result = NameIndex.build(this);
+            }
+         }
+      }
+      return result;
+   }
+
    public NameRecord getNextName()
    {
       NameRecord record = new NameRecord();
       return ReadNextRecord(record) ? record : null;
    }
+
+   /**
+    * @see org.jvss.physical.VssRecordFile#firstRecordOffset()
+    */
+   @Override
+   protected int firstRecordOffset()
+   {
+      return header.getHeader().getOffset() + RecordHeader.LENGTH + header.getHeader().getLength();
+   }
+
+   /**
+    * @see org.jvss.physical.VssRecordFile#creator()
+    */
+   @Override
+   protected RecordCreator<? extends VssRecord> creator()
+   {
+      return new NameRecordCreator();
+   }
+
+   private static class NameRecordCreator implements RecordCreator<NameRecord>
+   {
+
+      /**
+       * @see org.jvss.physical.VssRecordFile.RecordCreator#createRecord(org.jvss.physical.BufferReader,
+       *      org.jvss.physical.RecordHeader)
+       */
+      @Override
+      public NameRecord createRecord(BufferReader reader, RecordHeader header)
+      {
+         return header.getSignatureCode() == NameRecord.SIGNATURE_CODE ? new NameRecord() : null;
+      }
+   }
 }
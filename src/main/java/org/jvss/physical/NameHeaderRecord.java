@@ -28,6 +28,8 @@ public class NameHeaderRecord extends VssRecord
 {
    public final static String SIGNATURE = "HN";
 
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
    int eofOffset;
 
    /**
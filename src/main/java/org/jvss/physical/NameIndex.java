@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import org.jvss.physical.NameRecord.NameKind;
+
+/**
+ * Maps the offset of each name record in the name file to its long and project
+ * names.
+ * <p>
+ * The index is an open-addressing hash table with linear probing over parallel
+ * arrays, keyed by the record offset. Name records never start at offset 0,
+ * which is taken by the name header record, so 0 marks an empty slot. The index
+ * is not modified after it has been built, so lookups are thread-safe.
+ */
+public class NameIndex
+{
+   private int[] offsets;
+
+   private String[] longNames;
+
+   private String[] projectNames;
+
+   private int size;
+
+   private int shift;
+
+   public NameIndex(int expectedSize)
+   {
+      int capacity = 16;
+      while (capacity < expectedSize * 2)
+      {
+         capacity <<= 1;
+      }
+      allocate(capacity);
+   }
+
+   /**
+    * Builds the index in one sequential pass over the name file.
+    */
+   static NameIndex build(NameFile nameFile)
+   {
+      NameIndex index = new NameIndex(0);
+      RecordCursor cursor = nameFile.openCursor();
+      NameRecord record = new NameRecord();
+      while (cursor.next())
+      {
+         if (cursor.getSignatureCode() == NameRecord.SIGNATURE_CODE)
+         {
+            cursor.read(record);
+            int longIndex = record.indexOf(NameKind.Long);
+            int projectIndex = record.indexOf(NameKind.Project);
+            index.put(cursor.getOffset(), longIndex >= 0 ? record.getName(longIndex) : null,
+               projectIndex >= 0 ? record.getName(projectIndex) : null);
+         }
+      }
+      return index;
+   }
+
+   /**
+    * @return the number of name records in the index
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    * @return the slot of the name record at the given offset, or -1 if there
+    *         is no such record
+    */
+   public int find(int offset)
+   {
+      int mask = offsets.length - 1;
+      for (int slot = hash(offset); offsets[slot] != 0; slot = slot + 1 & mask)
+      {
+         if (offsets[slot] == offset)
+         {
+            return slot;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * @return the name to use for an item whose name record is in the given
+    *         slot: the project name for projects and the long name for files,
+    *         or null if the record has no such name
+    */
+   public String getName(int slot, boolean isProject)
+   {
+      return isProject ? projectNames[slot] : longNames[slot];
+   }
+
+   public void put(int offset, String longName, String projectName)
+   {
+      if (offset == 0)
+      {
+         throw new IllegalArgumentException("Name records never start at offset 0");
+      }
+      if ((size + 1) * 2 > offsets.length)
+      {
+         rehash(offsets.length * 2);
+      }
+      int mask = offsets.length - 1;
+      int slot = hash(offset);
+      while (offsets[slot] != 0 && offsets[slot] != offset)
+      {
+         slot = slot + 1 & mask;
+      }
+      if (offsets[slot] == 0)
+      {
+         offsets[slot] = offset;
+         ++size;
+      }
+      longNames[slot] = longName;
+      projectNames[slot] = projectName;
+   }
+
+   private int hash(int offset)
+   {
+      // Fibonacci hashing spreads the mostly sequential offsets over the table
+      return offset * 0x9E3779B9 >>> shift;
+   }
+
+   private void allocate(int capacity)
+   {
+      offsets = new int[capacity];
+      longNames = new String[capacity];
+      projectNames = new String[capacity];
+      shift = 32 - Integer.numberOfTrailingZeros(capacity);
+   }
+
+   private void rehash(int capacity)
+   {
+      int[] oldOffsets = offsets;
+      String[] oldLongNames = longNames;
+      String[] oldProjectNames = projectNames;
+      allocate(capacity);
+      size = 0;
+      for (int i = 0; i < oldOffsets.length; ++i)
+      {
+         if (oldOffsets[i] != 0)
+         {
+            put(oldOffsets[i], oldLongNames[i], oldProjectNames[i]);
+         }
+      }
+   }
+}
@@ -77,7 +77,9 @@ public class NameRecord extends VssRecord
       return SIGNATURE;
    }
 
-   public final String SIGNATURE = "SN";
+   public final static String SIGNATURE = "SN";
+
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
 
    int kindCount;
 
@@ -127,8 +129,12 @@ public class NameRecord extends VssRecord
 
       kindCount = reader.readInt16();
       reader.skip(2); // unknown
-      kinds = new NameKind[kindCount];
-      names = new String[kindCount];
+      if (kinds == null || kinds.length < kindCount)
+      {
+         // records read repeatedly through a cursor keep their arrays
+         kinds = new NameKind[kindCount];
+         names = new String[kindCount];
+      }
       int baseOffset = reader.getOffset() + kindCount * 4;
       for (int i = 0; i < kindCount; ++i)
       {
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+/**
+ * Packs physical names into longs.
+ * <p>
+ * Physical names are made of the letters A to Z, eight of them in practice.
+ * Each letter is stored in 5 bits, the first letter in the highest bits, so up
+ * to 12 letters fit in a long. Letters are packed without regard to case, and
+ * a packed name is never 0. Names of the same length compare as longs the way
+ * they compare as strings.
+ */
+public final class PhysicalName
+{
+   /**
+    * The longest name that can be packed.
+    */
+   public static final int MAX_LENGTH = 12;
+
+   private PhysicalName()
+   {
+   }
+
+   /**
+    * @return whether the given name can be packed
+    */
+   public static boolean isValid(String name)
+   {
+      if (name == null || name.length() == 0 || name.length() > MAX_LENGTH)
+      {
+         return false;
+      }
+      for (int i = 0; i < name.length(); ++i)
+      {
+         if (letter(name.charAt(i)) < 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * @return the packed form of the given name
+    * @throws IllegalArgumentException
+    *            if the name is not made of 1 to 12 letters
+    */
+   public static long encode(String name)
+   {
+      int length = name.length();
+      if (length == 0 || length > MAX_LENGTH)
+      {
+         throw new IllegalArgumentException("Invalid physical name: " + name);
+      }
+      long key = 0;
+      for (int i = 0; i < MAX_LENGTH; ++i)
+      {
+         int code = 0;
+         if (i < length)
+         {
+            code = letter(name.charAt(i)) + 1;
+            if (code == 0)
+            {
+               throw new IllegalArgumentException("Invalid physical name: " + name);
+            }
+         }
+         key = key << 5 | code;
+      }
+      return key;
+   }
+
+   /**
+    * @return the upper-case name packed in the given key
+    */
+   public static String decode(long key)
+   {
+      char[] name = new char[MAX_LENGTH];
+      int length = 0;
+      for (int shift = (MAX_LENGTH - 1) * 5; shift >= 0; shift -= 5)
+      {
+         int code = (int)(key >>> shift) & 0x1F;
+         if (code == 0)
+         {
+            break;
+         }
+         name[length++] = (char)('A' + code - 1);
+      }
+      return new String(name, 0, length);
+   }
+
+   private static int letter(char c)
+   {
+      if (c >= 'A' && c <= 'Z')
+      {
+         return c - 'A';
+      }
+      if (c >= 'a' && c <= 'z')
+      {
+         return c - 'a';
+      }
+      return -1;
+   }
+}
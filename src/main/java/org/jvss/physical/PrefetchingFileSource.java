@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads files ahead of use on background threads, so that a caller walking the
+ * database finds their contents already in memory.
+ * <p>
+ * {@link #prefetch(String)} queues a whole-file read into a pool bounded by
+ * total size. When the pool is full, the oldest completed prefetches are
+ * dropped to make room, and a file that still does not fit is not prefetched.
+ * A whole-file {@link #read(String)} takes the file out of the pool, waiting
+ * for it if it is being read, and cancelling it and reading the file itself if
+ * no thread has started on it yet; partial reads, {@link #exists(String)}
+ * and {@link #length(String)} are answered from it without removing it once
+ * it has been read, and go to the underlying source before then. Anything
+ * not in the pool is read from the underlying source as usual.
+ */
+public class PrefetchingFileSource implements FileSource
+{
+   private final FileSource delegate;
+
+   private final long maxBytes;
+
+   private final ExecutorService readers;
+
+   private final ExecutorService planner;
+
+   private final LinkedHashMap<String, Prefetch> pool = new LinkedHashMap<String, Prefetch>();
+
+   private long bytes;
+
+   private long hits;
+
+   private long misses;
+
+   private long dropped;
+
+   /**
+    * @param threads
+    *           the number of concurrent background reads
+    * @param maxBytes
+    *           the total size of the prefetched files kept in memory
+    */
+   public PrefetchingFileSource(FileSource delegate, int threads, long maxBytes)
+   {
+      this.delegate = delegate;
+      this.maxBytes = maxBytes;
+      this.readers = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("prefetch"));
+      this.planner = Executors.newSingleThreadExecutor(new DaemonThreadFactory("prefetch-planner"));
+   }
+
+   /**
+    * Queues a background read of the whole file, unless it is already queued.
+    */
+   public void prefetch(String path)
+   {
+      synchronized (this)
+      {
+         if (pool.containsKey(path))
+         {
+            return;
+         }
+         Prefetch prefetch = new Prefetch(path);
+         pool.put(path, prefetch);
+         readers.execute(prefetch.contents);
+      }
+   }
+
+   /**
+    * Runs a task that decides what to prefetch next, for instance after
+    * reading a file that names other files. Such tasks run one at a time, apart
+    * from the reads, so they may wait for prefetched files.
+    */
+   public void plan(Runnable task)
+   {
+      planner.execute(task);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#exists(java.lang.String)
+    */
+   @Override
+   public boolean exists(String path)
+   {
+      ByteBuffer contents = peek(path);
+      return contents != null || delegate.exists(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#length(java.lang.String)
+    */
+   @Override
+   public long length(String path) throws IOException
+   {
+      ByteBuffer contents = peek(path);
+      return contents != null ? contents.limit() : delegate.length(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#lastModified(java.lang.String)
+    */
+   @Override
+   public long lastModified(String path) throws IOException
+   {
+      return delegate.lastModified(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String)
+    */
+   @Override
+   public ByteBuffer read(String path) throws IOException
+   {
+      ByteBuffer contents = take(path);
+      return contents != null ? contents : delegate.read(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String, long, int)
+    */
+   @Override
+   public ByteBuffer read(String path, long position, int length) throws IOException
+   {
+      ByteBuffer contents = peek(path);
+      if (contents == null)
+      {
+         return delegate.read(path, position, length);
+      }
+      ByteBuffer range = contents.duplicate();
+      int start = (int)Math.min(position, range.limit());
+      range.position(start);
+      range.limit(Math.min(range.limit(), start + length));
+      return range.slice().order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#open(java.lang.String)
+    */
+   @Override
+   public InputStream open(String path) throws IOException
+   {
+      ByteBuffer contents = take(path);
+      return contents != null ? new ByteBufferInputStream(contents) : delegate.open(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#map(java.lang.String)
+    */
+   @Override
+   public SegmentedBuffer map(String path) throws IOException
+   {
+      ByteBuffer contents = take(path);
+      return contents != null ? SegmentedBuffer.wrap(contents) : delegate.map(path);
+   }
+
+   /**
+    * Stops the background threads. Queued reads still complete.
+    */
+   public void shutdown()
+   {
+      planner.shutdown();
+      readers.shutdown();
+   }
+
+   /**
+    * @return the total size of the prefetched files held
+    */
+   public synchronized long getBytes()
+   {
+      return bytes;
+   }
+
+   /**
+    * @return the number of whole-file reads served from the pool
+    */
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * @return the number of whole-file reads passed to the underlying source
+    */
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   /**
+    * @return the number of prefetches dropped or skipped for lack of room
+    */
+   public synchronized long getDropped()
+   {
+      return dropped;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format("%d files, %d bytes, %d hits, %d misses, %d dropped", pool.size(), bytes, hits, misses,
+         dropped);
+   }
+
+   /**
+    * Removes a file from the pool, waiting for it if it is being read.
+    *
+    * @return the contents of the file, or null if the file is not in the pool,
+    *         was not started, which cancels it, or could not be prefetched
+    */
+   private ByteBuffer take(String path)
+   {
+      Prefetch prefetch;
+      synchronized (this)
+      {
+         prefetch = pool.remove(path);
+         if (prefetch != null)
+         {
+            bytes -= prefetch.size;
+            if (!prefetch.started)
+            {
+               // reading the file now is quicker than waiting behind the queue
+               prefetch.contents.cancel(false);
+               prefetch = null;
+            }
+         }
+      }
+      ByteBuffer contents = prefetch != null ? prefetch.await() : null;
+      synchronized (this)
+      {
+         if (contents != null)
+         {
+            ++hits;
+         }
+         else
+         {
+            ++misses;
+         }
+      }
+      return contents;
+   }
+
+   /**
+    * @return the contents of a file in the pool, or null if the file is not
+    *         in the pool, has not been read yet or could not be prefetched;
+    *         small reads never wait behind the queue of whole-file reads
+    */
+   private ByteBuffer peek(String path)
+   {
+      Prefetch prefetch;
+      synchronized (this)
+      {
+         prefetch = pool.get(path);
+      }
+      return prefetch != null && prefetch.contents.isDone() ? prefetch.await() : null;
+   }
+
+   /**
+    * Makes room in the pool for a prefetch that is about to be read.
+    *
+    * @return false if the file does not fit, in which case it has been removed
+    *         from the pool and is not read
+    */
+   private synchronized boolean reserve(Prefetch prefetch, long size)
+   {
+      if (pool.get(prefetch.path) != prefetch)
+      {
+         // already taken by a whole-file read, which is waiting for it
+         return true;
+      }
+      Iterator<Map.Entry<String, Prefetch>> oldest = pool.entrySet().iterator();
+      while (bytes + size > maxBytes && oldest.hasNext())
+      {
+         Prefetch candidate = oldest.next().getValue();
+         if (candidate != prefetch && candidate.contents.isDone())
+         {
+            bytes -= candidate.size;
+            oldest.remove();
+            ++dropped;
+         }
+      }
+      if (bytes + size > maxBytes)
+      {
+         pool.remove(prefetch.path);
+         ++dropped;
+         return false;
+      }
+      prefetch.size = size;
+      bytes += size;
+      return true;
+   }
+
+   private class Prefetch implements Callable<ByteBuffer>
+   {
+      private final String path;
+
+      private final FutureTask<ByteBuffer> contents = new FutureTask<ByteBuffer>(this);
+
+      private long size;
+
+      private boolean started;
+
+      Prefetch(String path)
+      {
+         this.path = path;
+      }
+
+      /**
+       * @see java.util.concurrent.Callable#call()
+       */
+      @Override
+      public ByteBuffer call() throws IOException
+      {
+         synchronized (PrefetchingFileSource.this)
+         {
+            if (contents.isCancelled())
+            {
+               return null;
+            }
+            started = true;
+         }
+         if (!reserve(this, delegate.length(path)))
+         {
+            return null;
+         }
+         ByteBuffer result = delegate.read(path);
+         if (result instanceof MappedByteBuffer)
+         {
+            // mapping alone does not read anything
+            ((MappedByteBuffer)result).load();
+         }
+         return result;
+      }
+
+      ByteBuffer await()
+      {
+         try
+         {
+            return contents.get();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         catch (ExecutionException e)
+         {
+            // the regular read reports the error
+         }
+         return null;
+      }
+   }
+
+   private static class DaemonThreadFactory implements ThreadFactory
+   {
+      private final String name;
+
+      DaemonThreadFactory(String name)
+      {
+         this.name = name;
+      }
+
+      /**
+       * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+       */
+      @Override
+      public Thread newThread(Runnable r)
+      {
+         Thread thread = new Thread(r, name);
+         thread.setDaemon(true);
+         return thread;
+      }
+   }
+}
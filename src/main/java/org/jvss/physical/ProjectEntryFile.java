@@ -30,12 +30,17 @@ public class ProjectEntryFile extends VssRecordFile
     */
    public ProjectEntryFile(String filename, String encoding)
    {
-      super(filename, encoding);
+      this(filename, encoding, CrcVerifier.ALWAYS, LocalFileSource.INSTANCE);
+   }
+
+   public ProjectEntryFile(String filename, String encoding, CrcVerifier verifier, FileSource source)
+   {
+      super(filename, encoding, verifier, source, true);
    }
 
    public ProjectEntryRecord getFirstEntry()
    {
-      reader.setOffset(0);
+      reader().setOffset(0);
       return GetNextEntry();
    }
 
@@ -45,4 +50,27 @@ public class ProjectEntryFile extends VssRecordFile
       return ReadNextRecord(record) ? record : null;
    }
 
+   /**
+    * @see org.jvss.physical.VssRecordFile#creator()
+    */
+   @Override
+   protected RecordCreator<? extends VssRecord> creator()
+   {
+      return new ProjectEntryRecordCreator();
+   }
+
+   private static class ProjectEntryRecordCreator implements RecordCreator<ProjectEntryRecord>
+   {
+
+      /**
+       * @see org.jvss.physical.VssRecordFile.RecordCreator#createRecord(org.jvss.physical.BufferReader,
+       *      org.jvss.physical.RecordHeader)
+       */
+      @Override
+      public ProjectEntryRecord createRecord(BufferReader reader, RecordHeader header)
+      {
+         return header.getSignatureCode() == ProjectEntryRecord.SIGNATURE_CODE ? new ProjectEntryRecord() : null;
+      }
+   }
+
 }
@@ -71,7 +71,9 @@ public class ProjectEntryRecord extends VssRecord
       }
    }
 
-   public final String SIGNATURE = "JP";
+   public final static String SIGNATURE = "JP";
+
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
 
    protected ItemType itemType;
 
@@ -26,6 +26,8 @@ public class ProjectRecord extends VssRecord
 
    public final static String SIGNATURE = "PF";
 
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
    private int prevProjectOffset;
 
    private String projectFile;
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import org.jvss.physical.VssRecordFile.RecordCreator;
+
+import java.util.Arrays;
+
+/**
+ * Scans the records of a {@link VssRecordFile} one header at a time.
+ * <p>
+ * {@link #next()} only reads the 8-byte record header, so records that the
+ * caller is not interested in can be skipped by comparing
+ * {@link #getSignatureCode()} against the <code>SIGNATURE_CODE</code>
+ * constants of the record classes, without decoding the record or checking its
+ * CRC. The cursor reuses a single {@link RecordHeader}, and {@link #read()}
+ * reuses one record instance per record type, so the header and any record
+ * returned are only valid until the next call to {@link #next()}.
+ */
+public class RecordCursor
+{
+   private final BufferReader reader;
+
+   private final BufferReader recordReader;
+
+   private final RecordCreator<? extends VssRecord> creator;
+
+   private final boolean checkCrc;
+
+   private final RecordHeader header = new RecordHeader();
+
+   private int nextOffset;
+
+   private boolean positioned;
+
+   private int[] recordKeys = new int[8];
+
+   private VssRecord[] records = new VssRecord[8];
+
+   private int recordCount;
+
+   RecordCursor(BufferReader reader, int offset, RecordCreator<? extends VssRecord> creator, boolean checkCrc)
+   {
+      this.reader = reader;
+      this.recordReader = reader.duplicate();
+      this.nextOffset = offset;
+      this.creator = creator;
+      this.checkCrc = checkCrc;
+   }
+
+   /**
+    * Advances to the next record, reading only its header.
+    *
+    * @return false if there are no more records
+    */
+   public boolean next()
+   {
+      positioned = false;
+      reader.setOffset(nextOffset);
+      if (reader.getRemaining() <= RecordHeader.LENGTH)
+      {
+         return false;
+      }
+      try
+      {
+         header.Read(reader);
+      }
+      catch (EndOfBufferException e)
+      {
+         throw new RecordTruncatedException(e.getLocalizedMessage());
+      }
+      nextOffset = header.getOffset() + RecordHeader.LENGTH + header.getLength();
+      positioned = true;
+      return true;
+   }
+
+   /**
+    * Moves the cursor so that the next call to {@link #next()} reads the
+    * record at the given offset.
+    */
+   public void seek(int offset)
+   {
+      nextOffset = offset;
+      positioned = false;
+   }
+
+   /**
+    * @return the offset of the current record
+    */
+   public int getOffset()
+   {
+      return current().getOffset();
+   }
+
+   /**
+    * @return the signature code of the current record
+    */
+   public short getSignatureCode()
+   {
+      return current().getSignatureCode();
+   }
+
+   /**
+    * @return the header of the current record
+    */
+   public RecordHeader getHeader()
+   {
+      return current();
+   }
+
+   /**
+    * Decodes the current record into the instance kept by this cursor for its
+    * type, creating that instance on first use.
+    *
+    * @return the decoded record, or null if the record type is not known to
+    *         the file
+    */
+   public VssRecord read()
+   {
+      if (creator == null)
+      {
+         throw new IllegalStateException("Records of this file can only be read into a given instance");
+      }
+      BufferReader body = body();
+      int key = header.getSignatureCode() & 0xFFFF;
+      if (header.getSignatureCode() == RevisionRecord.SIGNATURE_CODE)
+      {
+         // revision records are decoded into different classes per action
+         key |= (RevisionRecord.peekAction(body).getValue() + 1) << 16;
+      }
+
+      VssRecord record = null;
+      for (int i = 0; i < recordCount; ++i)
+      {
+         if (recordKeys[i] == key)
+         {
+            record = records[i];
+            break;
+         }
+      }
+      if (record == null)
+      {
+         record = creator.createRecord(body, header);
+         if (record == null)
+         {
+            return null;
+         }
+         if (recordCount == records.length)
+         {
+            recordKeys = Arrays.copyOf(recordKeys, recordCount * 2);
+            records = Arrays.copyOf(records, recordCount * 2);
+         }
+         recordKeys[recordCount] = key;
+         records[recordCount++] = record;
+      }
+      return read(body, record);
+   }
+
+   /**
+    * Decodes the current record into the given instance.
+    *
+    * @return the given record
+    * @throws RecordNotFoundException
+    *            if the current record is of another type
+    */
+   public <T extends VssRecord> T read(T record)
+   {
+      return read(body(), record);
+   }
+
+   private <T extends VssRecord> T read(BufferReader body, T record)
+   {
+      try
+      {
+         // comment records always seem to have a zero CRC
+         if (checkCrc && header.getSignatureCode() != CommentRecord.SIGNATURE_CODE)
+         {
+            header.CheckCrc();
+         }
+         header.CheckSignature(record.getSignature());
+         record.read(body, header);
+         return record;
+      }
+      catch (EndOfBufferException e)
+      {
+         throw new RecordTruncatedException(e.getLocalizedMessage());
+      }
+   }
+
+   private BufferReader body()
+   {
+      int start = current().getOffset() + RecordHeader.LENGTH;
+      recordReader.setRange(start, start + header.getLength());
+      return recordReader;
+   }
+
+   private RecordHeader current()
+   {
+      if (!positioned)
+      {
+         throw new IllegalStateException("Cursor is not positioned on a record");
+      }
+      return header;
+   }
+}
@@ -37,4 +37,13 @@ public class RecordException extends RuntimeException
       super(message);
    }
 
+   /**
+    * @param message
+    * @param cause
+    */
+   public RecordException(String message, Throwable cause)
+   {
+      super(message, cause);
+   }
+
 }
@@ -20,6 +20,10 @@ import java.io.PrintStream;
 
 /**
  * Represents the header of a VSS record.
+ * <p>
+ * Signatures are kept as the 16-bit little-endian code of their two
+ * characters, and the actual CRC is only computed when it is asked for, so a
+ * header instance can be reused to scan records without allocations.
  */
 public class RecordHeader
 {
@@ -30,12 +34,25 @@ public class RecordHeader
 
    private int length;
 
+   private short signatureCode;
+
    private String signature;
 
    private short fileCrc;
 
    private short actualCrc;
 
+   private BufferReader crcReader;
+
+   /**
+    * @return the 16-bit code of a two-character record signature, as it is
+    *         stored in the record header
+    */
+   public static short signatureCode(String signature)
+   {
+      return (short)(signature.charAt(0) & 0xFF | (signature.charAt(1) & 0xFF) << 8);
+   }
+
    /**
     * @return the offset
     */
@@ -57,9 +74,21 @@ public class RecordHeader
     */
    public String getSignature()
    {
+      if (signature == null)
+      {
+         signature = new String(new char[]{(char)(signatureCode & 0xFF), (char)(signatureCode >> 8 & 0xFF)});
+      }
       return signature;
    }
 
+   /**
+    * @return the signature code
+    */
+   public short getSignatureCode()
+   {
+      return signatureCode;
+   }
+
    /**
     * @return the fileCrc
     */
@@ -73,6 +102,11 @@ public class RecordHeader
     */
    public short getActualCrc()
    {
+      if (crcReader != null)
+      {
+         actualCrc = crcReader.crc16At(offset + LENGTH, length);
+         crcReader = null;
+      }
       return actualCrc;
    }
 
@@ -81,15 +115,15 @@ public class RecordHeader
     */
    public boolean isCrcValid()
    {
-      return fileCrc == actualCrc;
+      return fileCrc == getActualCrc();
    }
 
    public void CheckSignature(String expected)
    {
-      if (!signature.equals(expected))
+      if (signatureCode != signatureCode(expected))
       {
          throw new RecordNotFoundException(String.format("Unexpected record signature: expected={0}, actual={1}",
-            expected, signature));
+            expected, getSignature()));
       }
    }
 
@@ -98,7 +132,7 @@ public class RecordHeader
       if (!isCrcValid())
       {
          throw new RecordCrcException(this, String.format("CRC error in {0} record: expected={1}, actual={2}",
-            signature, fileCrc, actualCrc));
+            getSignature(), fileCrc, getActualCrc()));
       }
    }
 
@@ -106,15 +140,21 @@ public class RecordHeader
    {
       offset = reader.getOffset();
       length = reader.readInt32();
-      signature = reader.readSignature(2);
+      signatureCode = reader.readInt16();
+      signature = null;
       fileCrc = reader.readInt16();
-      actualCrc = reader.crc16(length);
+      if (length < 0 || length > reader.getRemaining())
+      {
+         throw new EndOfBufferException(String.format("Record length %d at offset %06X exceeds buffer", length,
+            offset));
+      }
+      crcReader = reader;
    }
 
    public void dump(PrintStream writer) throws IOException
    {
-      writer.format("Signature: %s - Length: %s - Offset: %06X - CRC: %04X (%04X: %s)", signature, length, offset,
-         fileCrc, actualCrc, isCrcValid() ? "valid" : "INVALID");
+      writer.format("Signature: %s - Length: %s - Offset: %06X - CRC: %04X (%04X: %s)", getSignature(), length,
+         offset, fileCrc, getActualCrc(), isCrcValid() ? "valid" : "INVALID");
 
       //      writer.WriteLine(
       //         "Signature: {0} - Length: {1} - Offset: {2:X6} - CRC: {3:X4} ({5}: {4:X4})",
@@ -109,6 +109,8 @@ public class RevisionRecord extends VssRecord
 
    public final static String SIGNATURE = "EL";
 
+   public final static short SIGNATURE_CODE = RecordHeader.signatureCode(SIGNATURE);
+
    protected int prevRevOffset;
 
    protected Action action;
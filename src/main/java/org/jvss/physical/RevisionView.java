@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import org.jvss.physical.RevisionRecord.Action;
+
+import java.util.Date;
+
+/**
+ * Read-only view of a revision record that decodes its fixed fields on demand,
+ * straight from the record bytes.
+ * <p>
+ * Opening a view only reads the record header, so callers that need a few
+ * fields, such as the action, date and user, do not pay for decoding the names
+ * and project paths that follow them. Strings and dates are decoded once and
+ * kept; {@link #getRecord()} decodes the whole record, as the matching
+ * {@link RevisionRecord} subclass, the first time it is called. Views are
+ * thread-safe.
+ */
+public class RevisionView
+{
+   // offsets of the fixed fields within the record body
+   private static final int PREV_REV_OFFSET = 0;
+
+   private static final int ACTION = 4;
+
+   private static final int REVISION = 6;
+
+   private static final int DATE_TIME = 8;
+
+   private static final int USER = 12;
+
+   private static final int LABEL = 44;
+
+   private static final int COMMENT_OFFSET = 76;
+
+   private static final int LABEL_COMMENT_OFFSET = 80;
+
+   private static final int COMMENT_LENGTH = 84;
+
+   private static final int LABEL_COMMENT_LENGTH = 86;
+
+   private static final int FIXED_LENGTH = 88;
+
+   private final ItemFile itemFile;
+
+   private final BufferReader reader;
+
+   private final RecordHeader header;
+
+   private final int body;
+
+   private Action action;
+
+   private Date dateTime;
+
+   private String user;
+
+   private String label;
+
+   private RevisionRecord record;
+
+   RevisionView(ItemFile itemFile, BufferReader reader, RecordHeader header)
+   {
+      if (header.getLength() < FIXED_LENGTH)
+      {
+         throw new RecordTruncatedException(String.format("Revision record at offset %06X is %d bytes long",
+            header.getOffset(), header.getLength()));
+      }
+      this.itemFile = itemFile;
+      this.reader = reader;
+      this.header = header;
+      this.body = header.getOffset() + RecordHeader.LENGTH;
+      reader.setRange(body, body + header.getLength());
+   }
+
+   /**
+    * @return the header
+    */
+   public RecordHeader getHeader()
+   {
+      return header;
+   }
+
+   /**
+    * @return the offset of the record in the item file
+    */
+   public int getOffset()
+   {
+      return header.getOffset();
+   }
+
+   /**
+    * @return the prevRevOffset
+    */
+   public synchronized int getPrevRevOffset()
+   {
+      return int32At(PREV_REV_OFFSET);
+   }
+
+   /**
+    * @return the action
+    */
+   public synchronized Action getAction()
+   {
+      if (action == null)
+      {
+         action = Action.valueOf(int16At(ACTION));
+      }
+      return action;
+   }
+
+   /**
+    * @return the revision
+    */
+   public synchronized int getRevision()
+   {
+      return int16At(REVISION);
+   }
+
+   /**
+    * @return the dateTime
+    */
+   public synchronized Date getDateTime()
+   {
+      if (dateTime == null)
+      {
+         reader.setOffset(body + DATE_TIME);
+         dateTime = reader.readDateTime();
+      }
+      return dateTime;
+   }
+
+   /**
+    * @return the user
+    */
+   public synchronized String getUser()
+   {
+      if (user == null)
+      {
+         reader.setOffset(body + USER);
+         user = reader.readString(32);
+      }
+      return user;
+   }
+
+   /**
+    * @return the label
+    */
+   public synchronized String getLabel()
+   {
+      if (label == null)
+      {
+         reader.setOffset(body + LABEL);
+         label = reader.readString(32);
+      }
+      return label;
+   }
+
+   /**
+    * @return the commentOffset
+    */
+   public synchronized int getCommentOffset()
+   {
+      return int32At(COMMENT_OFFSET);
+   }
+
+   /**
+    * @return the labelCommentOffset
+    */
+   public synchronized int getLabelCommentOffset()
+   {
+      return int32At(LABEL_COMMENT_OFFSET);
+   }
+
+   /**
+    * @return the commentLength
+    */
+   public synchronized int getCommentLength()
+   {
+      return int16At(COMMENT_LENGTH);
+   }
+
+   /**
+    * @return the labelCommentLength
+    */
+   public synchronized int getLabelCommentLength()
+   {
+      return int16At(LABEL_COMMENT_LENGTH);
+   }
+
+   /**
+    * @return the fully decoded record
+    */
+   public synchronized RevisionRecord getRecord()
+   {
+      if (record == null)
+      {
+         record = itemFile.readRevision(header.getOffset());
+      }
+      return record;
+   }
+
+   private int int16At(int field)
+   {
+      reader.setOffset(body + field);
+      return reader.readInt16();
+   }
+
+   private int int32At(int field)
+   {
+      reader.setOffset(body + field);
+      return reader.readInt32();
+   }
+}
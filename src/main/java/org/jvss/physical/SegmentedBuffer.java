@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only view of file contents addressed by long offsets, held in one or
+ * more buffers.
+ * <p>
+ * A single buffer cannot address more than 2GB, so larger files are mapped as
+ * a sequence of windows of equal size. Reads that cross a window boundary are
+ * split between the windows. Nothing is copied onto the heap, so data files
+ * of any size can be read at random. Reads do not share state and are
+ * thread-safe.
+ */
+public class SegmentedBuffer
+{
+   /**
+    * Size of the windows large files are mapped in.
+    */
+   public static final int SEGMENT_SIZE = 1 << 30;
+
+   private static final int SEGMENT_SHIFT = 30;
+
+   private final ByteBuffer[] segments;
+
+   private final int shift;
+
+   private final long size;
+
+   private SegmentedBuffer(ByteBuffer[] segments, int shift, long size)
+   {
+      this.segments = segments;
+      this.shift = shift;
+      this.size = size;
+   }
+
+   /**
+    * A view of the same contents as the given buffer, for subclasses that
+    * account for the bytes read.
+    */
+   protected SegmentedBuffer(SegmentedBuffer buffer)
+   {
+      this(buffer.segments, buffer.shift, buffer.size);
+   }
+
+   /**
+    * @return a view of the remaining bytes of the given buffer
+    */
+   public static SegmentedBuffer wrap(ByteBuffer buffer)
+   {
+      ByteBuffer segment = buffer.slice();
+      // a single buffer never reaches offset 2^31, so every offset is in it
+      return new SegmentedBuffer(new ByteBuffer[]{segment}, 31, segment.remaining());
+   }
+
+   /**
+    * Maps a region of a file in windows of {@link #SEGMENT_SIZE} bytes. The
+    * mapping stays valid after the channel is closed.
+    */
+   public static SegmentedBuffer map(FileChannel channel, long position, long size) throws IOException
+   {
+      int count = (int)((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+      ByteBuffer[] segments = new ByteBuffer[count];
+      for (int i = 0; i < count; ++i)
+      {
+         long start = (long)i << SEGMENT_SHIFT;
+         segments[i] = channel.map(MapMode.READ_ONLY, position + start, Math.min(SEGMENT_SIZE, size - start));
+      }
+      return new SegmentedBuffer(segments, SEGMENT_SHIFT, size);
+   }
+
+   /**
+    * @return the size in bytes
+    */
+   public long size()
+   {
+      return size;
+   }
+
+   /**
+    * @return the byte at the given offset
+    */
+   public byte get(long position)
+   {
+      if (position < 0 || position >= size)
+      {
+         throw new IndexOutOfBoundsException("Offset " + position + " beyond size " + size);
+      }
+      return segments[(int)(position >>> shift)].get((int)(position & (1L << shift) - 1));
+   }
+
+   /**
+    * Copies bytes starting at the given offset.
+    *
+    * @return the number of bytes copied, fewer than requested only at the end
+    *         of the buffer, or -1 if the offset is at or beyond the end
+    */
+   public int read(long position, byte[] buffer, int offset, int count)
+   {
+      if (position < 0)
+      {
+         throw new IndexOutOfBoundsException("Negative offset " + position);
+      }
+      if (position >= size)
+      {
+         return count == 0 ? 0 : -1;
+      }
+      int total = (int)Math.min(count, size - position);
+      int copied = 0;
+      while (copied < total)
+      {
+         ByteBuffer segment = segments[(int)(position >>> shift)].duplicate();
+         segment.position((int)(position & (1L << shift) - 1));
+         int n = Math.min(total - copied, segment.remaining());
+         segment.get(buffer, offset + copied, n);
+         copied += n;
+         position += n;
+      }
+      return copied;
+   }
+
+   /**
+    * @return a stream over the whole buffer; the stream has its own position
+    */
+   public InputStream open()
+   {
+      return new InputStream()
+      {
+         private long position;
+
+         @Override
+         public int read()
+         {
+            return position < size ? get(position++) & 0xFF : -1;
+         }
+
+         @Override
+         public int read(byte[] buffer, int offset, int count)
+         {
+            int n = SegmentedBuffer.this.read(position, buffer, offset, count);
+            if (n > 0)
+            {
+               position += n;
+            }
+            return n;
+         }
+
+         @Override
+         public long skip(long count)
+         {
+            long n = Math.max(0, Math.min(count, size - position));
+            position += n;
+            return n;
+         }
+
+         @Override
+         public int available()
+         {
+            return (int)Math.min(Integer.MAX_VALUE, size - position);
+         }
+      };
+   }
+}
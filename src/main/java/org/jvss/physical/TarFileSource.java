@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Reads a database from an uncompressed tar archive without extracting it.
+ * <p>
+ * The headers are scanned once when the source is opened, recording where the
+ * data of each file starts; reads are then positional reads of the archive
+ * file, and larger files are memory-mapped in place. POSIX (ustar and pax) and
+ * GNU long names are understood. Compressed tar archives cannot be read at
+ * random and are not supported.
+ */
+public class TarFileSource extends ArchiveFileSource<TarFileSource.Entry>
+{
+   private static final int BLOCK = 512;
+
+   /**
+    * Files up to this size are read into the heap instead of being mapped.
+    */
+   private static final int MAP_THRESHOLD = 16 * 1024;
+
+   private final RandomAccessFile file;
+
+   private final FileChannel channel;
+
+   /**
+    * Position and size of the data of a file in the archive.
+    */
+   public static class Entry
+   {
+      final long offset;
+
+      final long size;
+
+      final long lastModified;
+
+      Entry(long offset, long size, long lastModified)
+      {
+         this.offset = offset;
+         this.size = size;
+         this.lastModified = lastModified;
+      }
+   }
+
+   public TarFileSource(File archive) throws IOException
+   {
+      this(archive, archive.getPath());
+   }
+
+   /**
+    * @param mountPath
+    *           the path at which the root of the archive appears
+    */
+   public TarFileSource(File archive, String mountPath) throws IOException
+   {
+      super(mountPath);
+      file = new RandomAccessFile(archive, "r");
+      channel = file.getChannel();
+      try
+      {
+         scan();
+      }
+      catch (IOException e)
+      {
+         file.close();
+         throw e;
+      }
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String)
+    */
+   @Override
+   public ByteBuffer read(String path) throws IOException
+   {
+      Entry entry = get(path);
+      if (entry.size > Integer.MAX_VALUE)
+      {
+         throw new IOException("File is too large to be read into one buffer: " + path + " (" + entry.size
+            + " bytes)");
+      }
+      if (entry.size > MAP_THRESHOLD)
+      {
+         return channel.map(MapMode.READ_ONLY, entry.offset, entry.size).order(ByteOrder.LITTLE_ENDIAN);
+      }
+      return read(entry, 0, (int)entry.size);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String, long, int)
+    */
+   @Override
+   public ByteBuffer read(String path, long position, int length) throws IOException
+   {
+      return read(get(path), position, length);
+   }
+
+   /**
+    * Streams the data of the entry with positional reads of the archive, so
+    * entries of any size can be read and streams do not share a position.
+    * 
+    * @see org.jvss.physical.FileSource#open(java.lang.String)
+    */
+   @Override
+   public InputStream open(String path) throws IOException
+   {
+      return new EntryInputStream(get(path));
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#map(java.lang.String)
+    */
+   @Override
+   public SegmentedBuffer map(String path) throws IOException
+   {
+      Entry entry = get(path);
+      if (entry.size <= MAP_THRESHOLD)
+      {
+         return SegmentedBuffer.wrap(read(entry, 0, (int)entry.size));
+      }
+      return SegmentedBuffer.map(channel, entry.offset, entry.size);
+   }
+
+   /**
+    * @see org.jvss.physical.ArchiveFileSource#size(java.lang.Object)
+    */
+   @Override
+   protected long size(Entry entry)
+   {
+      return entry.size;
+   }
+
+   /**
+    * @see org.jvss.physical.ArchiveFileSource#lastModified(java.lang.Object)
+    */
+   @Override
+   protected long lastModified(Entry entry)
+   {
+      return entry.lastModified;
+   }
+
+   /**
+    * @see java.io.Closeable#close()
+    */
+   @Override
+   public void close() throws IOException
+   {
+      file.close();
+   }
+
+   private ByteBuffer read(Entry entry, long position, int length) throws IOException
+   {
+      int count = (int)Math.max(0, Math.min(length, entry.size - position));
+      ByteBuffer buf = ByteBuffer.allocate(count).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(buf, entry.offset + position);
+      buf.flip();
+      return buf;
+   }
+
+   private void readFully(ByteBuffer buf, long position) throws IOException
+   {
+      while (buf.hasRemaining())
+      {
+         if (channel.read(buf, position + buf.position()) < 0)
+         {
+            throw new EOFException("Truncated tar archive");
+         }
+      }
+   }
+
+   private class EntryInputStream extends InputStream
+   {
+      private long position;
+
+      private final long end;
+
+      EntryInputStream(Entry entry)
+      {
+         this.position = entry.offset;
+         this.end = entry.offset + entry.size;
+      }
+
+      /**
+       * @see java.io.InputStream#read()
+       */
+      @Override
+      public int read() throws IOException
+      {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) > 0 ? b[0] & 0xFF : -1;
+      }
+
+      /**
+       * @see java.io.InputStream#read(byte[], int, int)
+       */
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         if (len == 0)
+         {
+            return 0;
+         }
+         if (position >= end)
+         {
+            return -1;
+         }
+         int count = channel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, end - position)), position);
+         if (count < 0)
+         {
+            throw new EOFException("Truncated tar archive");
+         }
+         position += count;
+         return count;
+      }
+
+      /**
+       * @see java.io.InputStream#skip(long)
+       */
+      @Override
+      public long skip(long n)
+      {
+         long count = Math.max(0, Math.min(n, end - position));
+         position += count;
+         return count;
+      }
+
+      /**
+       * @see java.io.InputStream#available()
+       */
+      @Override
+      public int available()
+      {
+         return (int)Math.min(Integer.MAX_VALUE, end - position);
+      }
+   }
+
+   private void scan() throws IOException
+   {
+      ByteBuffer header = ByteBuffer.allocate(BLOCK);
+      long position = 0;
+      long archiveSize = channel.size();
+      String longName = null;
+      long paxSize = -1;
+      while (position + BLOCK <= archiveSize)
+      {
+         header.clear();
+         readFully(header, position);
+         byte[] block = header.array();
+         if (block[0] == 0)
+         {
+            // end of archive marker
+            break;
+         }
+         long size = paxSize >= 0 ? paxSize : parseNumber(block, 124, 12);
+         long data = position + BLOCK;
+         char type = (char)block[156];
+         if (type == 'L')
+         {
+            longName = parseString(readData(data, size), 0, (int)size);
+         }
+         else if (type == 'x')
+         {
+            byte[] pax = readData(data, size);
+            String paxPath = parsePax(pax, "path");
+            String paxSizeValue = parsePax(pax, "size");
+            longName = paxPath != null ? paxPath : longName;
+            paxSize = paxSizeValue != null ? Long.parseLong(paxSizeValue) : -1;
+         }
+         else
+         {
+            if (type == '0' || type == 0 || type == '7')
+            {
+               String name = longName;
+               if (name == null)
+               {
+                  name = parseString(block, 0, 100);
+                  if (parseString(block, 257, 5).equals("ustar"))
+                  {
+                     String prefix = parseString(block, 345, 155);
+                     if (prefix.length() > 0)
+                     {
+                        name = prefix + "/" + name;
+                     }
+                  }
+               }
+               index(name, new Entry(data, size, parseNumber(block, 136, 12) * 1000));
+            }
+            longName = null;
+            paxSize = -1;
+         }
+         position = data + (size + BLOCK - 1) / BLOCK * BLOCK;
+      }
+   }
+
+   private byte[] readData(long position, long size) throws IOException
+   {
+      ByteBuffer buf = ByteBuffer.allocate((int)size);
+      readFully(buf, position);
+      return buf.array();
+   }
+
+   /**
+    * Parses a numeric header field: octal digits, or big-endian binary when the
+    * high bit of the first byte is set, as GNU tar writes large sizes.
+    */
+   private static long parseNumber(byte[] block, int offset, int length)
+   {
+      long value = 0;
+      if ((block[offset] & 0x80) != 0)
+      {
+         value = block[offset] & 0x7F;
+         for (int i = 1; i < length; ++i)
+         {
+            value = value << 8 | block[offset + i] & 0xFF;
+         }
+         return value;
+      }
+      for (int i = 0; i < length; ++i)
+      {
+         byte b = block[offset + i];
+         if (b >= '0' && b <= '7')
+         {
+            value = value << 3 | b - '0';
+         }
+         else if (b == 0 || b == ' ' && value > 0)
+         {
+            break;
+         }
+      }
+      return value;
+   }
+
+   private static String parseString(byte[] block, int offset, int length)
+   {
+      int end = offset;
+      while (end < offset + length && block[end] != 0)
+      {
+         ++end;
+      }
+      try
+      {
+         return new String(block, offset, end - offset, "UTF-8");
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * @return the value of a record of a pax extended header, each record being
+    *         "length key=value\n"
+    */
+   private static String parsePax(byte[] pax, String key)
+   {
+      int offset = 0;
+      while (offset < pax.length)
+      {
+         int space = offset;
+         while (space < pax.length && pax[space] != ' ')
+         {
+            ++space;
+         }
+         int length = (int)parseNumberDecimal(pax, offset, space);
+         if (length <= 0 || offset + length > pax.length)
+         {
+            break;
+         }
+         String record = parseString(pax, space + 1, offset + length - 1 - (space + 1));
+         int equals = record.indexOf('=');
+         if (equals > 0 && record.substring(0, equals).equals(key))
+         {
+            return record.substring(equals + 1);
+         }
+         offset += length;
+      }
+      return null;
+   }
+
+   private static long parseNumberDecimal(byte[] data, int from, int to)
+   {
+      long value = 0;
+      for (int i = from; i < to; ++i)
+      {
+         value = value * 10 + data[i] - '0';
+      }
+      return value;
+   }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import org.jvss.physical.IoScheduler.Lane;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+
+/**
+ * Reads another file source at the pace set by an {@link IoScheduler}, in one
+ * of its lanes.
+ * <p>
+ * The lane is chosen by the kind of files read through the source: a database
+ * reads its record files (item, project and name files) through a
+ * {@link Lane#Metadata} source and revision contents through a
+ * {@link Lane#Content} source sharing the same scheduler. Tokens are acquired
+ * before the bytes are transferred, in chunks of {@link #CHUNK_SIZE}, so a
+ * large file is read at the scheduled rate rather than charged after the
+ * fact: whole files are read chunk by chunk from a stream of the underlying
+ * source, and a mapping acquires the tokens for each chunk of the file the
+ * first time bytes of it are read, so reading a few ranges of a large file
+ * costs those ranges only. Queries of file attributes are not paced.
+ */
+public class ThrottledFileSource implements FileSource
+{
+   /**
+    * The number of bytes read for each acquisition of tokens.
+    */
+   public static final int CHUNK_SIZE = 64 * 1024;
+
+   private final FileSource delegate;
+
+   private final IoScheduler scheduler;
+
+   private final Lane lane;
+
+   public ThrottledFileSource(FileSource delegate, IoScheduler scheduler, Lane lane)
+   {
+      this.delegate = delegate;
+      this.scheduler = scheduler;
+      this.lane = lane;
+   }
+
+   /**
+    * @return the scheduler
+    */
+   public IoScheduler getScheduler()
+   {
+      return scheduler;
+   }
+
+   /**
+    * @return the lane
+    */
+   public Lane getLane()
+   {
+      return lane;
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#exists(java.lang.String)
+    */
+   @Override
+   public boolean exists(String path)
+   {
+      return delegate.exists(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#length(java.lang.String)
+    */
+   @Override
+   public long length(String path) throws IOException
+   {
+      return delegate.length(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#lastModified(java.lang.String)
+    */
+   @Override
+   public long lastModified(String path) throws IOException
+   {
+      return delegate.lastModified(path);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String)
+    */
+   @Override
+   public ByteBuffer read(String path) throws IOException
+   {
+      long length = delegate.length(path);
+      if (length > Integer.MAX_VALUE)
+      {
+         throw new IOException("File is too large to be read into one buffer: " + path + " (" + length + " bytes)");
+      }
+      byte[] contents = new byte[(int)length];
+      InputStream input = new ThrottledInputStream(delegate.open(path));
+      try
+      {
+         int offset = 0;
+         while (offset < contents.length)
+         {
+            int count = input.read(contents, offset, contents.length - offset);
+            if (count < 0)
+            {
+               break;
+            }
+            offset += count;
+         }
+         ByteBuffer result = ByteBuffer.wrap(contents, 0, offset).slice();
+         return result.order(ByteOrder.LITTLE_ENDIAN);
+      }
+      finally
+      {
+         input.close();
+      }
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String, long, int)
+    */
+   @Override
+   public ByteBuffer read(String path, long position, int length) throws IOException
+   {
+      scheduler.acquire(lane, length);
+      return delegate.read(path, position, length);
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#open(java.lang.String)
+    */
+   @Override
+   public InputStream open(String path) throws IOException
+   {
+      return new ThrottledInputStream(delegate.open(path));
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#map(java.lang.String)
+    */
+   @Override
+   public SegmentedBuffer map(String path) throws IOException
+   {
+      // mapping reads nothing; the pages are paced as they are read
+      return new ThrottledBuffer(delegate.map(path));
+   }
+
+   /**
+    * A mapping that acquires the tokens for each chunk before its first byte
+    * is read. Reads cannot throw IOException, so a read interrupted while
+    * waiting goes ahead with the interrupt status set.
+    */
+   private class ThrottledBuffer extends SegmentedBuffer
+   {
+      private final BitSet charged = new BitSet();
+
+      ThrottledBuffer(SegmentedBuffer buffer)
+      {
+         super(buffer);
+      }
+
+      /**
+       * @see org.jvss.physical.SegmentedBuffer#get(long)
+       */
+      @Override
+      public byte get(long position)
+      {
+         if (position >= 0 && position < size())
+         {
+            acquire(position, position + 1);
+         }
+         return super.get(position);
+      }
+
+      /**
+       * @see org.jvss.physical.SegmentedBuffer#read(long, byte[], int, int)
+       */
+      @Override
+      public int read(long position, byte[] buffer, int offset, int count)
+      {
+         if (position >= 0 && position < size())
+         {
+            acquire(position, Math.min(size(), position + count));
+         }
+         return super.read(position, buffer, offset, count);
+      }
+
+      private void acquire(long start, long end)
+      {
+         for (long chunk = start / CHUNK_SIZE; chunk * CHUNK_SIZE < end; ++chunk)
+         {
+            synchronized (charged)
+            {
+               if (charged.get((int)chunk))
+               {
+                  continue;
+               }
+               charged.set((int)chunk);
+            }
+            try
+            {
+               scheduler.acquire(lane, Math.min(CHUNK_SIZE, size() - chunk * CHUNK_SIZE));
+            }
+            catch (InterruptedIOException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+         }
+      }
+   }
+
+   private class ThrottledInputStream extends FilterInputStream
+   {
+      ThrottledInputStream(InputStream in)
+      {
+         super(in);
+      }
+
+      /**
+       * @see java.io.FilterInputStream#read()
+       */
+      @Override
+      public int read() throws IOException
+      {
+         scheduler.acquire(lane, 1);
+         return in.read();
+      }
+
+      /**
+       * Reads at most one chunk, after acquiring the tokens for it.
+       * 
+       * @see java.io.FilterInputStream#read(byte[], int, int)
+       */
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         int count = Math.min(len, CHUNK_SIZE);
+         scheduler.acquire(lane, count);
+         return in.read(b, off, count);
+      }
+   }
+}
@@ -15,21 +15,36 @@
  */
 package org.jvss.physical;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represents a file containing VSS records.
+ * <p>
+ * The file contents are read once and never modified, so a record file may be
+ * shared between threads. Methods taking an offset, {@link #openCursor()} and
+ * the methods of subclasses documented as such read through a reader of their
+ * own and are thread-safe. The sequential methods that continue from the
+ * previous read ({@link #readRecord(VssRecord)},
+ * {@link #ReadNextRecord(VssRecord)} and their subclass counterparts) share
+ * one position and must only be used from one thread at a time.
  */
 public class VssRecordFile
 {
    private final String filename;
 
-   protected final BufferReader reader;
+   private final String encoding;
+
+   private final CrcVerifier verifier;
+
+   private final FileSource source;
+
+   private final long fileLength;
+
+   private volatile BufferReader reader;
 
    public String filename()
    {
@@ -37,18 +52,109 @@ public class VssRecordFile
    }
 
    public VssRecordFile(String filename, String encoding)
+   {
+      this(filename, encoding, CrcVerifier.ALWAYS, LocalFileSource.INSTANCE, true);
+   }
+
+   /**
+    * @param verifier
+    *           decides when record CRCs are checked
+    * @param source
+    *           where the file contents are read from
+    * @param load
+    *           whether the file contents are read immediately; otherwise they
+    *           are read on the first call to {@link #reader()}
+    */
+   protected VssRecordFile(String filename, String encoding, CrcVerifier verifier, FileSource source, boolean load)
    {
       this.filename = filename.toLowerCase();
-      File vssFile = new File(this.filename);
+      this.encoding = encoding;
+      this.verifier = verifier;
+      this.source = source;
 
-      if (!vssFile.exists())
+      if (!source.exists(this.filename))
       {
          throw new RecordNotFoundException("File " + this.filename + " not found");
       }
-      reader = new BufferReader(encoding, readFile(filename));
+      try
+      {
+         fileLength = source.length(this.filename);
+      }
+      catch (IOException e)
+      {
+         throw new RecordNotFoundException("File " + this.filename + " not found: " + e.getMessage());
+      }
+      if (load)
+      {
+         reader();
+      }
+   }
+
+   /**
+    * @return the size of the file on disk when it was opened
+    */
+   public long getFileLength()
+   {
+      return fileLength;
+   }
+
+   /**
+    * @return whether the whole file has been read into memory
+    */
+   public boolean isLoaded()
+   {
+      return reader != null;
+   }
+
+   /**
+    * @return the reader over the whole file, reading the file if necessary
+    */
+   protected BufferReader reader()
+   {
+      BufferReader result = reader;
+      if (result == null)
+      {
+         synchronized (this)
+         {
+            result = reader;
+            if (result == null)
+            {
+               // a file that fails verification is not kept, so it is checked again
+               result = new BufferReader(encoding, readFile(filename));
+               verifier.fileLoaded(this, result);
+               reader = result;
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return a reader over the whole file positioned at the given offset,
+    *         which does not share its position with any other reader
+    */
+   protected BufferReader readerAt(int offset)
+   {
+      BufferReader result = reader().duplicate();
+      result.setOffset(offset);
+      return result;
+   }
+
+   /**
+    * Reads up to the given number of bytes from the start of the file, without
+    * loading the rest of it. Offsets in the returned reader are file offsets.
+    */
+   protected BufferReader prefixReader(int length)
+   {
+      return new BufferReader(encoding, readFile(filename, 0, length));
    }
 
    public void readRecord(VssRecord record)
+   {
+      readRecord(reader(), record);
+   }
+
+   protected void readRecord(BufferReader reader, VssRecord record)
    {
       try
       {
@@ -57,11 +163,7 @@ public class VssRecordFile
 
          BufferReader recordReader = reader.extract(recordHeader.getLength());
 
-         // comment records always seem to have a zero CRC
-         if (recordHeader.getSignature() != CommentRecord.SIGNATURE)
-         {
-            recordHeader.CheckCrc();
-         }
+         checkCrc(recordHeader);
 
          recordHeader.CheckSignature(record.getSignature());
 
@@ -75,12 +177,13 @@ public class VssRecordFile
 
    public void ReadRecord(VssRecord record, int offset)
    {
-      reader.setOffset(offset);
-      readRecord(record);
+      readRecord(readerAt(offset), record);
    }
 
    public boolean ReadNextRecord(VssRecord record)
    {
+      BufferReader reader = reader();
+      short signatureCode = RecordHeader.signatureCode(record.getSignature());
       while (reader.getRemaining() > RecordHeader.LENGTH)
       {
          try
@@ -90,14 +193,10 @@ public class VssRecordFile
 
             BufferReader recordReader = reader.extract(recordHeader.getLength());
 
-            // comment records always seem to have a zero CRC
-            if (!recordHeader.getSignature().equals(CommentRecord.SIGNATURE))
-            {
-               recordHeader.CheckCrc();
-            }
-
-            if (recordHeader.getSignature().equals(record.getSignature()))
+            // only records that are actually decoded are checked
+            if (recordHeader.getSignatureCode() == signatureCode)
             {
+               checkCrc(recordHeader);
                record.read(recordReader, recordHeader);
                return true;
             }
@@ -111,17 +210,19 @@ public class VssRecordFile
    }
 
    protected <T extends VssRecord> T getRecord(RecordCreator<T> creationCallback, boolean ignoreUnknown)
+   {
+      return getRecord(reader(), creationCallback, ignoreUnknown);
+   }
+
+   protected <T extends VssRecord> T getRecord(BufferReader reader, RecordCreator<T> creationCallback,
+      boolean ignoreUnknown)
    {
       RecordHeader recordHeader = new RecordHeader();
       recordHeader.Read(reader);
 
       BufferReader recordReader = reader.extract(recordHeader.getLength());
 
-      // comment records always seem to have a zero CRC
-      if (!recordHeader.getSignature().equals(CommentRecord.SIGNATURE))
-      {
-         recordHeader.CheckCrc();
-      }
+      checkCrc(recordHeader);
 
       T record = creationCallback.createRecord(recordReader, recordHeader);
 
@@ -141,16 +242,20 @@ public class VssRecordFile
 
    protected <T extends VssRecord> T getRecord(RecordCreator<T> creationCallback, boolean ignoreUnknown, int offset)
    {
-      reader.setOffset(offset);
-      return getRecord(creationCallback, ignoreUnknown);
+      return getRecord(readerAt(offset), creationCallback, ignoreUnknown);
    }
 
    protected <T extends VssRecord> T getNextRecord(RecordCreator<T> creationCallback, boolean skipUnknown)
+   {
+      return getNextRecord(reader(), creationCallback, skipUnknown);
+   }
 
+   protected <T extends VssRecord> T getNextRecord(BufferReader reader, RecordCreator<T> creationCallback,
+      boolean skipUnknown)
    {
       while (reader.getRemaining() > RecordHeader.LENGTH)
       {
-         T record = getRecord(creationCallback, skipUnknown);
+         T record = getRecord(reader, creationCallback, skipUnknown);
          if (record != null)
          {
             return record;
@@ -159,60 +264,146 @@ public class VssRecordFile
       return null;
    }
 
-   public static interface RecordCreator<T extends VssRecord>
+   /**
+    * Opens a cursor over the records of this file. The cursor has its own
+    * position, so it does not disturb {@link #ReadNextRecord(VssRecord)} or
+    * other cursors.
+    * 
+    * @return a cursor positioned before the first record
+    */
+   public RecordCursor openCursor()
    {
-      T createRecord(BufferReader reader, RecordHeader header);
+      return new RecordCursor(reader().duplicate(), firstRecordOffset(), creator(), verifier.isPerRecord());
    }
 
-   private static byte[] readFile(String filename)
+   /**
+    * @return the verifier deciding when record CRCs are checked
+    */
+   public CrcVerifier getVerifier()
    {
-      //       byte[] data;
-      //       using (var stream = new FileStream(filename,
-      //           FileMode.Open, FileAccess.Read, FileShare.Read))
-      //       {
-      //           data = new byte[stream.Length];
-      //           stream.Read(data, 0, data.Length);
-      //       }
-      //       return data;
+      return verifier;
+   }
 
-      File f = new File(filename.toLowerCase());
-      FileInputStream fin = null;
-      FileChannel ch = null;
-      try
-      {
-         fin = new FileInputStream(f);
-         ch = fin.getChannel();
-         int size = (int)ch.size();
-         MappedByteBuffer buf = ch.map(MapMode.READ_ONLY, 0, size);
-         byte[] bytes = new byte[size];
-         buf.get(bytes);
-         return bytes;
+   /**
+    * @return the source the file contents are read from
+    */
+   public FileSource getSource()
+   {
+      return source;
+   }
 
-      }
-      catch (IOException e)
+   /**
+    * Checks the CRC of a record being read, unless the verifier checks whole
+    * files instead.
+    */
+   protected void checkCrc(RecordHeader recordHeader)
+   {
+      // comment records always seem to have a zero CRC
+      if (verifier.isPerRecord() && recordHeader.getSignatureCode() != CommentRecord.SIGNATURE_CODE)
       {
-         // TODO Auto-generated catch block
-         e.printStackTrace();
+         recordHeader.CheckCrc();
       }
-      finally
+   }
+
+   /**
+    * Checks the CRC of every record in the file without decoding the records.
+    * Uses its own duplicate of the given reader over the whole file, so it may
+    * run concurrently with other reads.
+    *
+    * @return the CRC errors found, which is empty if the file is valid
+    */
+   List<RecordCrcException> verifyRecords(BufferReader reader)
+   {
+      List<RecordCrcException> errors = new ArrayList<RecordCrcException>();
+      BufferReader scanner = reader.duplicate();
+      scanner.setOffset(headerOffset());
+      RecordHeader recordHeader = new RecordHeader();
+      while (scanner.getRemaining() > RecordHeader.LENGTH)
       {
          try
          {
-            if (fin != null)
-            {
-               fin.close();
-            }
-            if (ch != null)
-            {
-               ch.close();
-            }
+            recordHeader.Read(scanner);
+         }
+         catch (EndOfBufferException e)
+         {
+            // truncation is reported when the record is actually read
+            break;
          }
-         catch (IOException e)
+         scanner.skip(recordHeader.getLength());
+         if (recordHeader.getSignatureCode() != CommentRecord.SIGNATURE_CODE && !recordHeader.isCrcValid())
          {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            errors.add(new RecordCrcException(recordHeader, String.format(
+               "CRC error in %s record at offset %06X in %s: expected=%04X, actual=%04X", recordHeader.getSignature(),
+               recordHeader.getOffset(), filename, recordHeader.getFileCrc(), recordHeader.getActualCrc())));
+            recordHeader = new RecordHeader();
          }
       }
-      return new byte[0];
+      return errors;
+   }
+
+   /**
+    * @return the offset of the first record of the file, including any header
+    *         record
+    */
+   protected int headerOffset()
+   {
+      return 0;
+   }
+
+   /**
+    * @return the offset of the first record visited by {@link #openCursor()}
+    */
+   protected int firstRecordOffset()
+   {
+      return 0;
+   }
+
+   /**
+    * @return the creator used by {@link RecordCursor#read()} to decode records
+    *         of this file, or null if records can only be read into a
+    *         caller-supplied instance
+    */
+   protected RecordCreator<? extends VssRecord> creator()
+   {
+      return null;
+   }
+
+   public static interface RecordCreator<T extends VssRecord>
+   {
+      T createRecord(BufferReader reader, RecordHeader header);
+   }
+
+   private ByteBuffer readFile(String filename, int position, int length)
+   {
+      try
+      {
+         return source.read(filename, position, length);
+      }
+      catch (IOException e)
+      {
+         throw readFailed(filename, e);
+      }
+   }
+
+   private ByteBuffer readFile(String filename)
+   {
+      try
+      {
+         return source.read(filename);
+      }
+      catch (IOException e)
+      {
+         throw readFailed(filename, e);
+      }
+   }
+
+   private static RecordException readFailed(String filename, IOException e)
+   {
+      if (e instanceof InterruptedIOException)
+      {
+         // the wait that was interrupted has cleared the status
+         Thread.currentThread().interrupt();
+      }
+      return new RecordException("Cannot read " + filename + ": " + e.getMessage(), e);
    }
 }
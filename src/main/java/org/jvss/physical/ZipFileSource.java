@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jvss.physical;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads a database from a zip archive without extracting it.
+ * <p>
+ * The central directory is indexed once when the source is opened. Entries
+ * are read through {@link ZipFile}, which is thread-safe and can skip within
+ * stored entries without reading them; a read at a position within a deflated
+ * entry has to inflate the entry up to that position. Archives larger than
+ * 4GB need a runtime with ZIP64 support (Java 7 or later).
+ */
+public class ZipFileSource extends ArchiveFileSource<ZipEntry>
+{
+   private final ZipFile zipFile;
+
+   public ZipFileSource(File archive) throws IOException
+   {
+      this(archive, archive.getPath());
+   }
+
+   /**
+    * @param mountPath
+    *           the path at which the root of the archive appears
+    */
+   public ZipFileSource(File archive, String mountPath) throws IOException
+   {
+      super(mountPath);
+      zipFile = new ZipFile(archive);
+      Enumeration<? extends ZipEntry> e = zipFile.entries();
+      while (e.hasMoreElements())
+      {
+         ZipEntry entry = e.nextElement();
+         if (!entry.isDirectory())
+         {
+            index(entry.getName(), entry);
+         }
+      }
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String)
+    */
+   @Override
+   public ByteBuffer read(String path) throws IOException
+   {
+      ZipEntry entry = get(path);
+      if (entry.getSize() > Integer.MAX_VALUE)
+      {
+         throw new IOException("File is too large to be read into one buffer: " + path + " (" + entry.getSize()
+            + " bytes)");
+      }
+      return read(entry, 0, (int)entry.getSize());
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#read(java.lang.String, long, int)
+    */
+   @Override
+   public ByteBuffer read(String path, long position, int length) throws IOException
+   {
+      ZipEntry entry = get(path);
+      return read(entry, position, (int)Math.max(0, Math.min(length, entry.getSize() - position)));
+   }
+
+   /**
+    * @see org.jvss.physical.FileSource#open(java.lang.String)
+    */
+   @Override
+   public InputStream open(String path) throws IOException
+   {
+      return zipFile.getInputStream(get(path));
+   }
+
+   /**
+    * Zip entries can only be decompressed in order, so the entry is read into
+    * the heap; entries over 2GB cannot be mapped and must be opened as a
+    * stream instead.
+    * 
+    * @see org.jvss.physical.FileSource#map(java.lang.String)
+    */
+   @Override
+   public SegmentedBuffer map(String path) throws IOException
+   {
+      return SegmentedBuffer.wrap(read(path));
+   }
+
+   /**
+    * @see org.jvss.physical.ArchiveFileSource#size(java.lang.Object)
+    */
+   @Override
+   protected long size(ZipEntry entry)
+   {
+      return entry.getSize();
+   }
+
+   /**
+    * @see org.jvss.physical.ArchiveFileSource#lastModified(java.lang.Object)
+    */
+   @Override
+   protected long lastModified(ZipEntry entry)
+   {
+      return Math.max(0, entry.getTime());
+   }
+
+   /**
+    * @see java.io.Closeable#close()
+    */
+   @Override
+   public void close() throws IOException
+   {
+      zipFile.close();
+   }
+
+   private ByteBuffer read(ZipEntry entry, long position, int length) throws IOException
+   {
+      byte[] data = new byte[length];
+      int count = 0;
+      InputStream in = zipFile.getInputStream(entry);
+      try
+      {
+         long skipped = 0;
+         while (skipped < position)
+         {
+            long n = in.skip(position - skipped);
+            if (n <= 0)
+            {
+               break;
+            }
+            skipped += n;
+         }
+         while (count < length)
+         {
+            int n = in.read(data, count, length - count);
+            if (n < 0)
+            {
+               break;
+            }
+            count += n;
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+      return ByteBuffer.wrap(data, 0, count).slice().order(ByteOrder.LITTLE_ENDIAN);
+   }
+}